@@ -3,6 +3,7 @@ package com.telecommande
 import android.app.Application
 import android.util.Log
 import com.telecommande.core.AndroidRemoteContext
+import com.telecommande.core.ssl.SslContextCache
 import org.bouncycastle.jce.provider.BouncyCastleProvider
 import java.io.File
 import java.security.Security
@@ -28,5 +29,14 @@ class MyApplication : Application() {
         remoteContextInstance.keyStoreFile = internalKeystoreFile
         Log.i("MyApplication", "Chemin du Keystore explicitement configuré à : ${remoteContextInstance.keyStoreFile.absolutePath}")
 
+        // Génère l'identité TLS en arrière-plan pour que la première connexion n'ait pas à l'attendre.
+        SslContextCache.getInstance().prepare().whenComplete { _, error ->
+            if (error != null) {
+                Log.e("MyApplication", "Erreur lors de la préparation de l'identité TLS", error)
+            } else {
+                Log.i("MyApplication", "Identité TLS prête en ${SslContextCache.getInstance().lastBuildNanos / 1_000_000} ms")
+            }
+        }
+
     }
 }
@@ -12,14 +12,17 @@ import com.telecommande.data.model.PairedTvInfo
 import com.telecommande.ui.viewmodels.delegates.RemoteViewModelStateDelegate
 import com.telecommande.ui.viewmodels.services.TvCommandSender
 import com.telecommande.ui.viewmodels.services.TvConnectionManager
+import com.telecommande.ui.viewmodels.services.TvNetworkMonitor
 import com.telecommande.ui.viewmodels.services.TvPairingHandler
 import com.telecommande.ui.viewmodels.services.TvWakeOnLanService
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 class RemoteViewModel(application: Application) : AndroidViewModel(application) {
     private val TAG = "RemoteViewModel"
@@ -29,7 +32,8 @@ class RemoteViewModel(application: Application) : AndroidViewModel(application)
 
     private val stateDelegate = RemoteViewModelStateDelegate(viewModelScope, appSettings)
     private val wolService = TvWakeOnLanService(application)
-    private val commandSender = TvCommandSender(coreAndroidRemoteTv, viewModelScope, stateDelegate.isConnected::value)
+    private val networkMonitor = TvNetworkMonitor(application, coreAndroidRemoteTv)
+    private val commandSender = TvCommandSender(coreAndroidRemoteTv, stateDelegate.isConnected::value)
 
     private val _currentTargetTvInfo = MutableStateFlow<PairedTvInfo?>(null)
     val currentTargetTvInfo: StateFlow<PairedTvInfo?> = _currentTargetTvInfo.asStateFlow()
@@ -102,6 +106,7 @@ class RemoteViewModel(application: Application) : AndroidViewModel(application)
 
     init {
         Log.i(TAG, "RemoteViewModel Initializing...")
+        networkMonitor.start()
         viewModelScope.launch {
             val activeTv = appSettings.getActiveTvInfo()
             if (activeTv != null) {
@@ -267,15 +272,33 @@ class RemoteViewModel(application: Application) : AndroidViewModel(application)
             }
             if (!isAutoAttempt) stateDelegate.setLoadingState("Allumage de $tvName (WoL)...")
             wolService.sendWakeOnLanPacket(tvMac)
-            val delayMs = if (isAutoAttempt) 5000L else 10000L
-            if (!isAutoAttempt) stateDelegate.setLoadingState("Attente démarrage $tvName (${delayMs/1000}s)...")
-            delay(delayMs)
+            // On sonde le port distant plutôt que d'attendre un délai fixe : la connexion part dès que la TV répond.
+            val maxWaitMs = if (isAutoAttempt) 15000L else 30000L
+            if (!isAutoAttempt) stateDelegate.setLoadingState("Attente démarrage $tvName...")
+            val reachable = withContext(Dispatchers.IO) { AndroidRemoteTv.awaitReachable(tvIp, maxWaitMs) }
+            if (!reachable) Log.w(TAG, "$tvName ne répond pas après ${maxWaitMs / 1000}s, tentative de connexion quand même.")
             if (stateDelegate.pinRequired.value || stateDelegate.isConnected.value) return@launch
             if (!isAutoAttempt) stateDelegate.setLoadingState("Connexion à $tvName après WoL...")
             connectionManager.connect(tvIp, isInitialPairingAttempt = false, isAutoAttemptAfterWoL = isAutoAttempt)
         }
     }
 
+    // Au retour au premier plan : la session TLS + configuration est établie en tâche de fond et
+    // reprise par la prochaine connexion ou commande.
+    fun prewarmActiveTv() {
+        val tvInfo = _currentTargetTvInfo.value ?: return
+        if (isConnected.value || !pairingHandler.isPotentiallyPaired(tvInfo.ipAddress)) return
+        // Une connexion (ou un réveil WoL) déjà en cours ouvrirait sinon une seconde session.
+        if (connectionManager.isConnectJobActive() || wolAndConnectJob?.isActive == true || stateDelegate.pinRequired.value) return
+        coreAndroidRemoteTv.prewarm(tvInfo.ipAddress).whenComplete { timings, error ->
+            if (error == null) {
+                Log.d(TAG, "Pré-connexion à ${tvInfo.name} prête : $timings")
+            } else {
+                Log.d(TAG, "Pré-connexion à ${tvInfo.name} impossible : ${error.message}")
+            }
+        }
+    }
+
     fun sendPowerKeyPress() {
         viewModelScope.launch {
             if (stateDelegate.isConnected.value) {
@@ -338,6 +361,7 @@ class RemoteViewModel(application: Application) : AndroidViewModel(application)
 
     override fun onCleared() {
         super.onCleared()
+        networkMonitor.stop()
         wolAndConnectJob?.cancel()
         connectionManager.disconnect()
     }
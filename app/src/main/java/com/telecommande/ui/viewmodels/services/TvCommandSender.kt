@@ -3,13 +3,10 @@ package com.telecommande.ui.viewmodels.services
 import android.util.Log
 import com.telecommande.core.AndroidRemoteTv
 import com.telecommande.core.remote.Remotemessage
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
+import java.util.concurrent.CancellationException
 
 class TvCommandSender(
     private val androidRemoteTv: AndroidRemoteTv,
-    private val coroutineScope: CoroutineScope,
     private val isConnectedChecker: () -> Boolean
 ) {
     private val TAG = "CommandSender"
@@ -19,16 +16,49 @@ class TvCommandSender(
             Log.w(TAG, "Impossible d'envoyer ${keyCode.name}: non connecté.")
             return
         }
-        coroutineScope.launch(Dispatchers.IO) {
-            try {
-                androidRemoteTv.sendCommand(keyCode, action)
+        // L'envoi ne bloque jamais (file COALESCE ou NIO) : appel direct depuis le thread principal.
+        androidRemoteTv.sendCommand(keyCode, action).whenComplete { _, error ->
+            if (error == null) {
                 Log.d(TAG, "Commande ${keyCode.name} envoyée.")
-            } catch (e: Exception) {
-                Log.e(TAG, "Erreur lors de l'envoi de la commande ${keyCode.name}", e)
+            } else {
+                Log.e(TAG, "Erreur lors de l'envoi de la commande ${keyCode.name}", error)
             }
         }
     }
 
+    // Touche maintenue : un seul START_LONG/END_LONG au lieu d'une rafale de SHORT.
+    fun pressKey(keyCode: Remotemessage.RemoteKeyCode) {
+        if (isConnectedChecker()) androidRemoteTv.pressKey(keyCode)
+    }
+
+    fun releaseKey(keyCode: Remotemessage.RemoteKeyCode) = androidRemoteTv.releaseKey(keyCode)
+
+    // Volume absolu : une seule rafale de VOLUME_UP/DOWN, corrigée d'après le niveau rapporté par la TV.
+    fun setVolume(level: Int) {
+        if (!isConnectedChecker()) {
+            Log.w(TAG, "Impossible de régler le volume à $level: non connecté.")
+            return
+        }
+        androidRemoteTv.setVolume(level).whenComplete { reached, error ->
+            if (error == null) {
+                Log.d(TAG, "Volume réglé à $reached (demandé: $level).")
+            } else if (error !is CancellationException) {
+                Log.e(TAG, "Erreur lors du réglage du volume à $level", error)
+            }
+        }
+    }
+
+    // Texte saisi : les frappes rapprochées partent en un seul RemoteImeBatchEdit.
+    fun sendText(text: String) {
+        if (!isConnectedChecker()) {
+            Log.w(TAG, "Impossible d'envoyer le texte: non connecté.")
+            return
+        }
+        androidRemoteTv.sendText(text).whenComplete { _, error ->
+            if (error != null) Log.e(TAG, "Erreur lors de l'envoi du texte", error)
+        }
+    }
+
     fun sendPower() = sendCommand(Remotemessage.RemoteKeyCode.KEYCODE_POWER)
     fun sendVolumeUp() = sendCommand(Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_UP)
     fun sendVolumeDown() = sendCommand(Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_DOWN)
@@ -0,0 +1,58 @@
+package com.telecommande.ui.viewmodels.services
+
+import android.app.Application
+import android.content.Context
+import android.net.ConnectivityManager
+import android.net.Network
+import android.util.Log
+import com.telecommande.core.AndroidRemoteTv
+
+/**
+ * Relaie les changements de réseau par défaut au moteur de reconnexion : une reconnexion en
+ * attente repart dès que le réseau revient au lieu d'attendre la fin de son backoff.
+ */
+class TvNetworkMonitor(
+    private val application: Application,
+    private val androidRemoteTv: AndroidRemoteTv
+) {
+    private val TAG = "TvNetworkMonitor"
+    private var isRegistered = false
+
+    private val networkCallback = object : ConnectivityManager.NetworkCallback() {
+        override fun onAvailable(network: Network) {
+            Log.d(TAG, "Réseau disponible: $network")
+            androidRemoteTv.onNetworkAvailable()
+        }
+
+        override fun onLost(network: Network) {
+            Log.d(TAG, "Réseau perdu: $network")
+            androidRemoteTv.onNetworkLost()
+        }
+    }
+
+    fun start() {
+        if (isRegistered) return
+        val connectivityManager = application.applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager?
+        if (connectivityManager == null) {
+            Log.w(TAG, "ConnectivityManager indisponible, pas de suivi du réseau.")
+            return
+        }
+        try {
+            connectivityManager.registerDefaultNetworkCallback(networkCallback)
+            isRegistered = true
+        } catch (e: Exception) {
+            Log.e(TAG, "Erreur lors de l'enregistrement du suivi réseau", e)
+        }
+    }
+
+    fun stop() {
+        if (!isRegistered) return
+        val connectivityManager = application.applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager?
+        try {
+            connectivityManager?.unregisterNetworkCallback(networkCallback)
+        } catch (e: Exception) {
+            Log.w(TAG, "Erreur lors du désenregistrement du suivi réseau", e)
+        }
+        isRegistered = false
+    }
+}
@@ -3,6 +3,7 @@ package com.telecommande.ui.viewmodels.services
 import android.util.Log
 import com.telecommande.core.AndroidRemoteContext
 import com.telecommande.core.AndroidRemoteTv
+import com.telecommande.core.ssl.KeyStoreManager
 import com.telecommande.data.AppSettings
 import com.telecommande.data.model.PairedTvInfo
 import kotlinx.coroutines.CoroutineScope
@@ -22,10 +23,12 @@ class TvPairingHandler(
 ) {
     private val TAG = "PairingHandler"
 
+    // Le keystore existe dès le démarrage (identité générée en avance) : seul un appairage réussi compte.
     fun isPotentiallyPaired(tvIpAddress: String): Boolean {
-        val keystoreFile = remoteContext.keyStoreFile
-        Log.d(TAG, "isPotentiallyPaired pour $tvIpAddress. Fichier Keystore global: ${keystoreFile?.absolutePath}, Existe: ${keystoreFile?.exists()}, Longueur: ${keystoreFile?.length()}")
-        return keystoreFile?.exists() == true && keystoreFile.length() > 0
+        val keystoreFile = remoteContext.keyStoreFile ?: return false
+        val isPaired = KeyStoreManager.isPaired(keystoreFile)
+        Log.d(TAG, "isPotentiallyPaired pour $tvIpAddress. Fichier Keystore global: ${keystoreFile.absolutePath}, Existe: ${keystoreFile.exists()}, Appairé: $isPaired")
+        return isPaired
     }
 
     fun submitPin(pin: String, tvName: String, tvIp: String) {
@@ -38,7 +41,13 @@ class TvPairingHandler(
 
         coroutineScope.launch(Dispatchers.IO) {
             try {
-                androidRemoteTv.sendSecret(pin)
+                if (!androidRemoteTv.sendSecret(pin)) {
+                    // La TV attend toujours : on reste sur l'écran de saisie du PIN.
+                    Log.w(TAG, "PIN refusé pour $tvName ($tvIp).")
+                    withContext(Dispatchers.Main) {
+                        onPairingStateChange("PIN incorrect. Veuillez réessayer.", true)
+                    }
+                }
             } catch (e: Exception) {
                 Log.e(TAG, "Erreur lors de l'appel à androidRemoteTv.sendSecret: ${e.message}", e)
                 withContext(Dispatchers.Main) {
@@ -1,6 +1,8 @@
 package com.telecommande.core;
 
 import android.os.Build;
+import com.telecommande.core.remote.CommandWriter;
+import com.telecommande.core.remote.RemoteEventDispatcher;
 
 import java.io.File;
 import java.nio.file.Paths;
@@ -10,6 +12,17 @@ public class AndroidRemoteContext {
     private String clientName = getDefaultDeviceName();
     private File keyStoreFile = Paths.get("androidtv.keystore").toFile();
     private char[] keyStorePass = "KeyStore_Password".toCharArray();
+    private int sendQueueCapacity = 32;
+    private CommandWriter.OverflowPolicy sendOverflowPolicy = CommandWriter.OverflowPolicy.COALESCE;
+    private int eventQueueCapacity = 64;
+    private RemoteEventDispatcher.OverflowPolicy eventOverflowPolicy = RemoteEventDispatcher.OverflowPolicy.DROP_OLDEST;
+    private boolean pipelinedHandshake = true;
+    private long pingIntervalMillis = 5000;
+    private int maxMissedPings = 3;
+    private int connectTimeoutMillis = 5000;
+    private int handshakeTimeoutMillis = 10000;
+    private long messageTimeoutMillis = 10000;
+    private long secretTimeoutMillis = 120000;
     private static volatile AndroidRemoteContext instance;
 
     private AndroidRemoteContext() {
@@ -78,4 +91,91 @@ public class AndroidRemoteContext {
     public void setKeyStorePass(char[] keyStorePass) {
         this.keyStorePass = keyStorePass;
     }
+
+    public int getSendQueueCapacity() {
+        return sendQueueCapacity;
+    }
+    public void setSendQueueCapacity(int sendQueueCapacity) {
+        this.sendQueueCapacity = sendQueueCapacity;
+    }
+
+    public CommandWriter.OverflowPolicy getSendOverflowPolicy() {
+        return sendOverflowPolicy;
+    }
+    public void setSendOverflowPolicy(CommandWriter.OverflowPolicy sendOverflowPolicy) {
+        this.sendOverflowPolicy = sendOverflowPolicy;
+    }
+
+    public int getEventQueueCapacity() {
+        return eventQueueCapacity;
+    }
+    public void setEventQueueCapacity(int eventQueueCapacity) {
+        this.eventQueueCapacity = eventQueueCapacity;
+    }
+
+    public RemoteEventDispatcher.OverflowPolicy getEventOverflowPolicy() {
+        return eventOverflowPolicy;
+    }
+    public void setEventOverflowPolicy(RemoteEventDispatcher.OverflowPolicy eventOverflowPolicy) {
+        this.eventOverflowPolicy = eventOverflowPolicy;
+    }
+
+    /**
+     * Whether remote sessions send their configure and set-active replies without waiting for
+     * the TV's turn; hosts that reject this are switched to the strict sequence automatically.
+     */
+    public boolean isPipelinedHandshake() {
+        return pipelinedHandshake;
+    }
+    public void setPipelinedHandshake(boolean pipelinedHandshake) {
+        this.pipelinedHandshake = pipelinedHandshake;
+    }
+
+    public long getPingIntervalMillis() {
+        return pingIntervalMillis;
+    }
+    public void setPingIntervalMillis(long pingIntervalMillis) {
+        this.pingIntervalMillis = pingIntervalMillis;
+    }
+
+    public int getMaxMissedPings() {
+        return maxMissedPings;
+    }
+    public void setMaxMissedPings(int maxMissedPings) {
+        this.maxMissedPings = maxMissedPings;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getHandshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+    public void setHandshakeTimeoutMillis(int handshakeTimeoutMillis) {
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+    }
+
+    /**
+     * How long a session waits for each protocol message from the TV.
+     */
+    public long getMessageTimeoutMillis() {
+        return messageTimeoutMillis;
+    }
+    public void setMessageTimeoutMillis(long messageTimeoutMillis) {
+        this.messageTimeoutMillis = messageTimeoutMillis;
+    }
+
+    /**
+     * How long pairing waits for the user to enter the PIN shown on the TV.
+     */
+    public long getSecretTimeoutMillis() {
+        return secretTimeoutMillis;
+    }
+    public void setSecretTimeoutMillis(long secretTimeoutMillis) {
+        this.secretTimeoutMillis = secretTimeoutMillis;
+    }
 }
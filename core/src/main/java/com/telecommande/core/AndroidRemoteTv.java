@@ -3,19 +3,56 @@ package com.telecommande.core;
 import com.telecommande.core.exception.PairingException;
 import com.telecommande.core.pairing.PairingListener;
 import com.telecommande.core.pairing.PairingSession;
+import com.telecommande.core.remote.ConnectTimings;
+import com.telecommande.core.remote.ImeSession;
+import com.telecommande.core.remote.KeyRepeatController;
+import com.telecommande.core.remote.ReconnectEngine;
 import com.telecommande.core.remote.RemoteSession;
 import com.telecommande.core.remote.Remotemessage;
+import com.telecommande.core.remote.VolumeState;
+import com.telecommande.core.ssl.KeyStoreManager;
+import com.telecommande.core.wire.NioTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class AndroidRemoteTv extends BaseAndroidRemoteTv {
     private final Logger logger = LoggerFactory.getLogger(AndroidRemoteTv.class);
     private PairingSession mPairingSession;
-    private RemoteSession mRemoteSession;
+    private volatile RemoteSession mRemoteSession;
     private AndroidTvListener mLocalTvListener;
+    private static final Executor PREWARM_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "RemotePrewarm");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final NioTransport mTransport;
+    private RemoteSession mPrewarmedSession;
+    private ForwardingListener mPrewarmListener;
+    private String mPrewarmHost;
+    private CompletableFuture<ConnectTimings> mPrewarmFuture;
+    private KeyRepeatController mKeyRepeatController;
+    private ScheduledExecutorService mKeyRepeatScheduler;
+
+    public AndroidRemoteTv() {
+        this(null);
+    }
+
+    /**
+     * @param transport non-blocking transport shared with other TVs, or {@code null} for one
+     *                  blocking reader thread per session
+     */
+    public AndroidRemoteTv(NioTransport transport) {
+        mTransport = transport;
+    }
 
     public void connect(String host, AndroidTvListener androidTvListener) throws GeneralSecurityException, IOException, InterruptedException, PairingException {
         this.mLocalTvListener = androidTvListener;
@@ -24,37 +61,27 @@ public class AndroidRemoteTv extends BaseAndroidRemoteTv {
             mLocalTvListener.onConnectingToRemote();
         }
 
-        mRemoteSession = new RemoteSession(host, 6466, new RemoteSession.RemoteSessionListener() {
-            @Override
-            public void onConnected() {
-                if (mLocalTvListener != null) mLocalTvListener.onConnected();
-            }
-
-            @Override
-            public void onSslError() throws GeneralSecurityException, IOException, InterruptedException, PairingException {
-                if (mLocalTvListener != null) mLocalTvListener.onError("SSL Error during remote connection");
-            }
-
-            @Override
-            public void onDisconnected() {
-                if (mLocalTvListener != null) mLocalTvListener.onDisconnect();
-            }
+        RemoteSession prewarmed = takePrewarmedSession(host).join();
+        if (prewarmed != null) {
+            logger.info("Using pre-warmed remote session to {}", host);
+            mRemoteSession = prewarmed;
+            if (mLocalTvListener != null) mLocalTvListener.onConnected();
+            return;
+        }
 
-            @Override
-            public void onError(String message) {
-                if (mLocalTvListener != null) mLocalTvListener.onError("Remote Session Error: " + message);
-            }
-        });
+        ForwardingListener listener = new ForwardingListener();
+        listener.isAttached = true;
+        mRemoteSession = new RemoteSession(host, 6466, listener, mTransport);
 
         int pairingPort = 6467;
         int remotePort = 6466;
 
-        if (AndroidRemoteContext.getInstance().getKeyStoreFile().exists()) {
-            logger.info("Keystore exists, attempting direct remote connection to {}:{}", host, remotePort);
+        if (KeyStoreManager.isPaired(AndroidRemoteContext.getInstance().getKeyStoreFile())) {
+            logger.info("Identity already paired, attempting direct remote connection to {}:{}", host, remotePort);
             mRemoteSession.connect();
         } else {
-            logger.info("No keystore, initiating pairing with {}:{}", host, pairingPort);
-            mPairingSession = new PairingSession();
+            logger.info("Identity not paired yet, initiating pairing with {}:{}", host, pairingPort);
+            mPairingSession = new PairingSession(mTransport);
             mPairingSession.pair(host, pairingPort, new PairingListener() {
                 @Override
                 public void onSessionCreated() {
@@ -107,20 +134,257 @@ public class AndroidRemoteTv extends BaseAndroidRemoteTv {
 
     }
 
-    public void sendCommand(Remotemessage.RemoteKeyCode remoteKeyCode, Remotemessage.RemoteDirection remoteDirection) {
+    /**
+     * Never blocks: with a pre-warm still in flight, the command is sent once it completes.
+     */
+    public CompletableFuture<Void> sendCommand(Remotemessage.RemoteKeyCode remoteKeyCode, Remotemessage.RemoteDirection remoteDirection) {
+        RemoteSession remoteSession = mRemoteSession;
+        if (remoteSession != null) {
+            return remoteSession.sendCommand(remoteKeyCode, remoteDirection);
+        }
+        return takePrewarmedSession(null).thenCompose(prewarmed -> {
+            RemoteSession session;
+            synchronized (this) {
+                if (mRemoteSession == null) {
+                    mRemoteSession = prewarmed;
+                }
+                session = mRemoteSession;
+            }
+            if (session == null) {
+                logger.warn("Cannot send command, mRemoteSession is null.");
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(new IOException("Not connected"));
+                return future;
+            }
+            return session.sendCommand(remoteKeyCode, remoteDirection);
+        });
+    }
+
+    /**
+     * Connects to {@code host} in the background, through TLS and the configure exchange, and
+     * parks the session until the next {@link #connect} to that host or {@link #sendCommand}
+     * adopts it.
+     *
+     * @return the phase timings of the pre-warm connect; fails right away if a session is already
+     * connected or connecting, or before pairing, as the TV would reject the identity
+     */
+    public synchronized CompletableFuture<ConnectTimings> prewarm(String host) {
         if (mRemoteSession != null) {
-            mRemoteSession.sendCommand(remoteKeyCode, remoteDirection);
-        } else {
-            logger.warn("Cannot send command, mRemoteSession is null.");
+            CompletableFuture<ConnectTimings> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("Remote session to " + host + " already in use"));
+            return future;
+        }
+        if (!KeyStoreManager.isPaired(AndroidRemoteContext.getInstance().getKeyStoreFile())) {
+            CompletableFuture<ConnectTimings> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("Not paired yet, cannot pre-warm " + host));
+            return future;
+        }
+        if (mPrewarmFuture != null && host.equals(mPrewarmHost)
+                && (!mPrewarmFuture.isDone() || mPrewarmedSession != null && mPrewarmedSession.isConnected())) {
+            return mPrewarmFuture;
+        }
+        closePrewarmedSession();
+        ForwardingListener listener = new ForwardingListener();
+        RemoteSession session = new RemoteSession(host, 6466, listener, mTransport);
+        mPrewarmListener = listener;
+        mPrewarmHost = host;
+        mPrewarmFuture = CompletableFuture.supplyAsync(() -> {
+            try {
+                session.connect();
+            } catch (Exception e) {
+                session.closeSocket();
+                throw new CompletionException(e);
+            }
+            if (!session.isConnected()) {
+                session.closeSocket();
+                throw new CompletionException(new IOException("Pre-warm connect to " + host + " failed"));
+            }
+            synchronized (AndroidRemoteTv.this) {
+                if (!host.equals(mPrewarmHost)) {
+                    session.closeSocket();
+                    throw new CompletionException(new IOException("Pre-warm to " + host + " superseded"));
+                }
+                mPrewarmedSession = session;
+            }
+            logger.info("Pre-warmed remote session to {}: {}", host, session.getLastConnectTimings());
+            return session.getLastConnectTimings();
+        }, PREWARM_EXECUTOR);
+        return mPrewarmFuture;
+    }
+
+    /**
+     * Hands over the parked session for {@code host} (any host if {@code null}) once a pre-warm
+     * still in flight completes; completes with {@code null} if there is none or it failed.
+     */
+    private CompletableFuture<RemoteSession> takePrewarmedSession(String host) {
+        CompletableFuture<ConnectTimings> future;
+        String prewarmHost;
+        synchronized (this) {
+            if (mPrewarmFuture == null || (host != null && !host.equals(mPrewarmHost))) {
+                return CompletableFuture.completedFuture(null);
+            }
+            future = mPrewarmFuture;
+            prewarmHost = mPrewarmHost;
+        }
+        return future.handle((timings, error) -> {
+            if (error != null) {
+                logger.debug("Pre-warm to {} not usable: {}", prewarmHost, error.getMessage());
+            }
+            return adoptPrewarmedSession(future);
+        });
+    }
+
+    private synchronized RemoteSession adoptPrewarmedSession(CompletableFuture<ConnectTimings> future) {
+        if (mPrewarmFuture != future) {
+            // Taken by another caller, or replaced by a newer pre-warm.
+            return null;
+        }
+        RemoteSession session = mPrewarmedSession;
+        ForwardingListener listener = mPrewarmListener;
+        mPrewarmedSession = null;
+        mPrewarmListener = null;
+        mPrewarmFuture = null;
+        mPrewarmHost = null;
+        if (session == null || !session.isConnected()) {
+            return null;
+        }
+        listener.isAttached = true;
+        return session;
+    }
+
+    private synchronized void closePrewarmedSession() {
+        if (mPrewarmedSession != null) {
+            mPrewarmedSession.closeSocket();
+            mPrewarmedSession = null;
         }
+        mPrewarmListener = null;
+        mPrewarmFuture = null;
+        mPrewarmHost = null;
     }
 
-    public void sendSecret(String code) {
+    /**
+     * Relays session events to the app listener, but only once the session is in use so a
+     * failed pre-warm stays silent.
+     */
+    private final class ForwardingListener implements RemoteSession.RemoteSessionListener {
+        private volatile boolean isAttached;
+
+        @Override
+        public void onConnected() {
+            if (isAttached && mLocalTvListener != null) mLocalTvListener.onConnected();
+        }
+
+        @Override
+        public void onSslError() {
+            if (isAttached && mLocalTvListener != null) mLocalTvListener.onError("SSL Error during remote connection");
+        }
+
+        @Override
+        public void onDisconnected() {
+            if (isAttached && mLocalTvListener != null) mLocalTvListener.onDisconnect();
+        }
+
+        @Override
+        public void onError(String message) {
+            if (isAttached && mLocalTvListener != null) mLocalTvListener.onError("Remote Session Error: " + message);
+        }
+    }
+
+    /**
+     * Starts a held key press; see {@link KeyRepeatController}.
+     */
+    public void pressKey(Remotemessage.RemoteKeyCode remoteKeyCode) {
+        getKeyRepeatController().press(remoteKeyCode);
+    }
+
+    public void releaseKey(Remotemessage.RemoteKeyCode remoteKeyCode) {
+        getKeyRepeatController().release(remoteKeyCode);
+    }
+
+    public synchronized KeyRepeatController getKeyRepeatController() {
+        if (mKeyRepeatController == null) {
+            mKeyRepeatScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "KeyRepeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            mKeyRepeatController = new KeyRepeatController(this::sendCommand, mKeyRepeatScheduler);
+        }
+        return mKeyRepeatController;
+    }
+
+    /**
+     * Volume reported by the connected TV, or {@code null} when not connected. Each connect
+     * creates a new session, so subscribe again from {@link AndroidTvListener#onConnected()}.
+     */
+    public VolumeState getVolumeState() {
+        RemoteSession remoteSession = mRemoteSession;
+        return remoteSession != null ? remoteSession.getVolumeState() : null;
+    }
+
+    /**
+     * Sets the TV's volume to {@code level} in one burst of key presses. The future completes
+     * with the level the TV reported, and fails if not connected or the volume is not known yet.
+     */
+    public CompletableFuture<Integer> setVolume(int level) {
+        RemoteSession remoteSession = mRemoteSession;
+        if (remoteSession == null) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("Not connected"));
+            return future;
+        }
+        return remoteSession.setVolume(level);
+    }
+
+    /**
+     * Replaces the content of the text field focused on the TV; see {@link ImeSession}.
+     */
+    public CompletableFuture<Void> sendText(String text) {
+        RemoteSession remoteSession = mRemoteSession;
+        if (remoteSession == null) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("Not connected"));
+            return future;
+        }
+        return remoteSession.getImeSession().setText(text);
+    }
+
+    /**
+     * Network hint from the platform, e.g. a connectivity callback: retries a pending reconnect
+     * right away instead of waiting out its backoff.
+     */
+    public void onNetworkAvailable() {
+        RemoteSession remoteSession = mRemoteSession;
+        if (remoteSession != null) {
+            remoteSession.getReconnectEngine().onNetworkAvailable();
+        }
+    }
+
+    public void onNetworkLost() {
+        RemoteSession remoteSession = mRemoteSession;
+        if (remoteSession != null) {
+            remoteSession.getReconnectEngine().onNetworkLost();
+        }
+    }
+
+    /**
+     * Blocks until the TV's remote port accepts connections, e.g. after Wake-on-LAN, or until
+     * {@code timeoutMillis} elapsed.
+     */
+    public static boolean awaitReachable(String host, long timeoutMillis) throws InterruptedException {
+        return ReconnectEngine.awaitPortOpen(host, 6466, timeoutMillis);
+    }
+
+    /**
+     * @return {@code false} if the PIN does not match the TV's, which keeps waiting for another
+     * one, or if no pairing is waiting for a PIN
+     */
+    public boolean sendSecret(String code) {
         if (mPairingSession != null) {
-            mPairingSession.provideSecret(code);
-        } else {
-            logger.warn("Cannot send secret, mPairingSession is null.");
+            return mPairingSession.provideSecret(code);
         }
+        logger.warn("Cannot send secret, mPairingSession is null.");
+        return false;
     }
 
     public void disconnect() {
@@ -128,6 +392,17 @@ public class AndroidRemoteTv extends BaseAndroidRemoteTv {
 
         boolean wasConnectedOrPairing = (mRemoteSession != null || mPairingSession != null);
 
+        closePrewarmedSession();
+
+        synchronized (this) {
+            if (mKeyRepeatController != null) {
+                mKeyRepeatController.releaseAll();
+                mKeyRepeatScheduler.shutdownNow();
+                mKeyRepeatController = null;
+                mKeyRepeatScheduler = null;
+            }
+        }
+
         if (mRemoteSession != null) {
             logger.debug("Closing RemoteSession socket.");
             mRemoteSession.closeSocket();
@@ -0,0 +1,29 @@
+package com.telecommande.core.exception;
+
+import java.io.IOException;
+
+/**
+ * A pairing or remote session gave up waiting on the TV. The session has already been closed
+ * when this is thrown.
+ */
+public class SessionTimeoutException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Phase {
+        CONNECT,
+        HANDSHAKE,
+        MESSAGE
+    }
+
+    private final Phase mPhase;
+
+    public SessionTimeoutException(Phase phase, String message) {
+        super(message);
+        mPhase = phase;
+    }
+
+    public Phase getPhase() {
+        return mPhase;
+    }
+}
@@ -0,0 +1,108 @@
+package com.telecommande.core.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets (two per power of two, from 1.4 µs up to
+ * about 70 minutes), so percentiles are accurate to within roughly 41%.
+ * <p>
+ * Recording is a binary search plus three atomic updates and never allocates, so it is safe on
+ * the packet path.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 64;
+    private static final long[] BUCKET_UPPER_BOUNDS_NANOS = new long[BUCKET_COUNT];
+
+    static {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            BUCKET_UPPER_BOUNDS_NANOS[i] = (long) (1000 * Math.pow(2, (i + 1) / 2.0));
+        }
+        BUCKET_UPPER_BOUNDS_NANOS[BUCKET_COUNT - 1] = Long.MAX_VALUE;
+    }
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSumNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    public void record(long durationNanos) {
+        if (durationNanos < 0) {
+            durationNanos = 0;
+        }
+        mBuckets.incrementAndGet(bucketFor(durationNanos));
+        mCount.incrementAndGet();
+        mSumNanos.addAndGet(durationNanos);
+        long max;
+        while (durationNanos > (max = mMaxNanos.get())) {
+            if (mMaxNanos.compareAndSet(max, durationNanos)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public double getMeanMillis() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSumNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxMillis() {
+        return mMaxNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the upper bound, in milliseconds, of the bucket holding the given percentile
+     * (0-100), capped at the largest recorded value; 0 if nothing was recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min(BUCKET_UPPER_BOUNDS_NANOS[i], mMaxNanos.get()) / 1e6;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mSumNanos.set(0);
+        mMaxNanos.set(0);
+    }
+
+    private static int bucketFor(long durationNanos) {
+        int low = 0;
+        int high = BUCKET_COUNT - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (durationNanos <= BUCKET_UPPER_BOUNDS_NANOS[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "count=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90),
+                getPercentileMillis(99), getMaxMillis());
+    }
+}
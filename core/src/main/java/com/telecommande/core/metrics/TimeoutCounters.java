@@ -0,0 +1,42 @@
+package com.telecommande.core.metrics;
+
+import com.telecommande.core.exception.SessionTimeoutException;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide count of session timeouts by phase.
+ */
+public final class TimeoutCounters {
+
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(SessionTimeoutException.Phase.values().length);
+
+    private TimeoutCounters() {
+    }
+
+    /**
+     * Counts {@code e} and returns it, so callers can {@code throw TimeoutCounters.count(...)}.
+     */
+    public static SessionTimeoutException count(SessionTimeoutException e) {
+        COUNTS.incrementAndGet(e.getPhase().ordinal());
+        return e;
+    }
+
+    public static long get(SessionTimeoutException.Phase phase) {
+        return COUNTS.get(phase.ordinal());
+    }
+
+    public static long getTotal() {
+        long total = 0;
+        for (int i = 0; i < COUNTS.length(); i++) {
+            total += COUNTS.get(i);
+        }
+        return total;
+    }
+
+    public static void reset() {
+        for (int i = 0; i < COUNTS.length(); i++) {
+            COUNTS.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.telecommande.core.pairing;
+
+import com.telecommande.core.wire.NioTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pairs many TVs at once, e.g. a newly installed floor.
+ * <p>
+ * Up to {@link #setMaxConcurrent(int)} {@link PairingSession}s run side by side on one
+ * {@link NioTransport}. Whenever a TV shows its PIN, a {@link PinRequest} is put on
+ * {@link #getPinRequests()} for the operator; the PIN is checked locally against the TV's
+ * certificate before anything is sent, so a typo costs a retry rather than the pairing.
+ */
+public class FleetProvisioner implements Closeable {
+
+    public static final int PAIRING_PORT = 6467;
+
+    private final Logger logger = LoggerFactory.getLogger(FleetProvisioner.class);
+    private final NioTransport mTransport;
+    private final boolean isOwnTransport;
+    private final BlockingQueue<PinRequest> mPinRequests = new LinkedBlockingQueue<>();
+    private final Map<String, PairingSession> mActiveSessions = new ConcurrentHashMap<>();
+    private volatile int mMaxConcurrent = 8;
+    private volatile boolean isClosed = false;
+
+    public FleetProvisioner() throws IOException {
+        this(new NioTransport("FleetProvisioner"), true);
+    }
+
+    /**
+     * @param transport shared transport, which the provisioner does not close
+     */
+    public FleetProvisioner(NioTransport transport) {
+        this(transport, false);
+    }
+
+    private FleetProvisioner(NioTransport transport, boolean ownTransport) {
+        mTransport = transport;
+        isOwnTransport = ownTransport;
+    }
+
+    /**
+     * Limits how many TVs pair at once, and so how many PINs can be on screen waiting for the
+     * operator at a time.
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        mMaxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    /**
+     * Prompts for PINs, in the order the TVs displayed them.
+     */
+    public BlockingQueue<PinRequest> getPinRequests() {
+        return mPinRequests;
+    }
+
+    public CompletableFuture<ProvisioningReport> provision(Collection<String> hosts) {
+        return provision(hosts, PAIRING_PORT);
+    }
+
+    /**
+     * Pairs every host, {@link #setMaxConcurrent(int) a few} at a time. The returned future
+     * never fails; per-TV failures are reported in the result.
+     */
+    public CompletableFuture<ProvisioningReport> provision(Collection<String> hosts, int port) {
+        Run run = new Run(new LinkedHashSet<>(hosts), port);
+        if (run.mTotal == 0) {
+            run.mFuture.complete(new ProvisioningReport(new ArrayList<>(), 0));
+            return run.mFuture;
+        }
+        int parallel = Math.min(mMaxConcurrent, run.mTotal);
+        for (int i = 0; i < parallel; i++) {
+            run.startNext();
+        }
+        return run.mFuture;
+    }
+
+    /**
+     * Aborts {@code host}'s pairing if it is in progress; it is reported as failed.
+     */
+    public void cancel(String host) {
+        PairingSession session = mActiveSessions.get(host);
+        if (session != null) {
+            session.closeSocket();
+        }
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        for (PairingSession session : mActiveSessions.values()) {
+            session.closeSocket();
+        }
+        mPinRequests.clear();
+        if (isOwnTransport) {
+            mTransport.close();
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * A TV showing its PIN. Stays valid until a matching PIN was accepted or the pairing ended, so
+     * a rejected PIN can simply be submitted again.
+     */
+    public static final class PinRequest {
+        private final String mHost;
+        private final PairingSession mSession;
+        private final AtomicInteger mWrongPins;
+        private final long mRequestedNanos = System.nanoTime();
+
+        PinRequest(String host, PairingSession session, AtomicInteger wrongPins) {
+            mHost = host;
+            mSession = session;
+            mWrongPins = wrongPins;
+        }
+
+        public String getHost() {
+            return mHost;
+        }
+
+        public long getRequestedNanos() {
+            return mRequestedNanos;
+        }
+
+        /**
+         * @return whether the TV is still waiting for this PIN
+         */
+        public boolean isPending() {
+            return mSession.getState() == PairingSession.State.AWAITING_SECRET;
+        }
+
+        /**
+         * Sends {@code pin} if it matches the TV's certificate.
+         *
+         * @return {@code false} if the PIN is wrong or the TV no longer waits for one
+         */
+        public boolean submit(String pin) {
+            if (mSession.provideSecret(pin)) {
+                return true;
+            }
+            if (isPending()) {
+                mWrongPins.incrementAndGet();
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "PIN for " + mHost;
+        }
+    }
+
+    private final class Run {
+        private final Deque<String> mPending;
+        private final int mTotal;
+        private final int mPort;
+        private final long mStartNanos = System.nanoTime();
+        private final List<ProvisioningReport.TvResult> mResults = new ArrayList<>();
+        private final CompletableFuture<ProvisioningReport> mFuture = new CompletableFuture<>();
+
+        Run(Collection<String> hosts, int port) {
+            mPending = new ArrayDeque<>(hosts);
+            mTotal = hosts.size();
+            mPort = port;
+        }
+
+        void startNext() {
+            String host;
+            synchronized (this) {
+                host = mPending.poll();
+            }
+            if (host == null) {
+                return;
+            }
+            if (isClosed) {
+                finish(host, null, 0, new IOException("FleetProvisioner closed"));
+                return;
+            }
+            PairingSession session = new PairingSession(mTransport);
+            AtomicInteger wrongPins = new AtomicInteger();
+            mActiveSessions.put(host, session);
+            session.pairAsync(host, mPort, new PairingListener() {
+                @Override
+                public void onSessionCreated() {
+                }
+
+                @Override
+                public void onPerformInputDeviceRole() {
+                }
+
+                @Override
+                public void onPerformOutputDeviceRole(byte[] gamma) {
+                }
+
+                @Override
+                public void onSecretRequested() {
+                    mPinRequests.add(new PinRequest(host, session, wrongPins));
+                }
+
+                @Override
+                public void onSessionEnded() {
+                }
+
+                @Override
+                public void onError(String message) {
+                }
+
+                @Override
+                public void onPaired() {
+                }
+
+                @Override
+                public void onLog(String message) {
+                }
+            }).whenComplete((ignored, error) -> {
+                mActiveSessions.remove(host, session);
+                if (error != null) {
+                    logger.info("Provisioning {} failed: {}", host, unwrap(error).getMessage());
+                }
+                finish(host, session.getTimings(), wrongPins.get(), error != null ? unwrap(error) : null);
+            });
+        }
+
+        private void finish(String host, PairingTimings timings, int wrongPins, Throwable error) {
+            boolean isDone;
+            synchronized (this) {
+                mResults.add(new ProvisioningReport.TvResult(host, timings, wrongPins, error));
+                isDone = mResults.size() == mTotal;
+            }
+            if (isDone) {
+                mFuture.complete(new ProvisioningReport(mResults, System.nanoTime() - mStartNanos));
+            } else {
+                startNext();
+            }
+        }
+    }
+}
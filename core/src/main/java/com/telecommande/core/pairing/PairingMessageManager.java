@@ -14,8 +14,7 @@ public class PairingMessageManager extends MessageManager {
                         .setServiceName(serviceName))
                 .setStatus(Pairingmessage.PairingMessage.Status.STATUS_OK)
                 .setProtocolVersion(2);
-        byte[] pairingMessageByteArray = pairingMessage.build().toByteArray();
-        return addLengthAndCreate(pairingMessageByteArray);
+        return createFrame(pairingMessage.build());
     }
 
     public byte[] createPairingOption() {
@@ -30,8 +29,7 @@ public class PairingMessageManager extends MessageManager {
                 .setStatus(Pairingmessage.PairingMessage.Status.STATUS_OK)
                 .setProtocolVersion(2);
 
-        byte[] pairingMessageByteArray = pairingOption.build().toByteArray();
-        return addLengthAndCreate(pairingMessageByteArray);
+        return createFrame(pairingOption.build());
     }
 
 
@@ -47,13 +45,11 @@ public class PairingMessageManager extends MessageManager {
                 .setStatus(Pairingmessage.PairingMessage.Status.STATUS_OK)
                 .setProtocolVersion(2);
 
-        byte[] pairingMessageByteArray = pairingConfig.build().toByteArray();
-        return addLengthAndCreate(pairingMessageByteArray);
+        return createFrame(pairingConfig.build());
     }
 
     public byte[] createSecretMessage(Pairingmessage.PairingMessage pairingSecretMessage) {
-        byte[] pairingMessageByteArray = pairingSecretMessage.toByteArray();
-        return addLengthAndCreate(pairingMessageByteArray);
+        return createFrame(pairingSecretMessage);
     }
 
     public Pairingmessage.PairingMessage createSecretMessageProto(byte[] secret) {
@@ -1,32 +1,47 @@
 package com.telecommande.core.pairing;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
 import com.telecommande.core.wire.PacketParser;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
 
 public class PairingPacketParser extends PacketParser {
 
-    private BlockingQueue<Pairingmessage.PairingMessage> mMessagesQueue;
+    public interface MessageListener {
+        void onMessage(Pairingmessage.PairingMessage pairingMessage);
+    }
+
+    private final MessageListener mMessageListener;
 
-    public PairingPacketParser(InputStream inputStream, BlockingQueue<Pairingmessage.PairingMessage> messagesQueue) {
+    public PairingPacketParser(InputStream inputStream, MessageListener messageListener) {
         super(inputStream);
-        mMessagesQueue = messagesQueue;
+        mMessageListener = messageListener;
+    }
+
+    public PairingPacketParser(MessageListener messageListener) {
+        super();
+        mMessageListener = messageListener;
     }
 
     @Override
     public void messageBufferReceived(byte[] buf) {
+        messageBufferReceived(buf, 0, buf.length);
+    }
+
+    /**
+     * Forwards every message, including those with an error status, so the session can fail
+     * right away instead of timing out.
+     */
+    @Override
+    public void messageBufferReceived(byte[] buf, int offset, int length) {
+        Pairingmessage.PairingMessage pairingMessage;
         try {
-            Pairingmessage.PairingMessage pairingMessage = Pairingmessage.PairingMessage.parseFrom(buf);
-            if (pairingMessage.getStatus() == Pairingmessage.PairingMessage.Status.STATUS_OK) {
-                mMessagesQueue.put(pairingMessage);
-            }
-        } catch (InvalidProtocolBufferException | InterruptedException e) {
+            pairingMessage = Pairingmessage.PairingMessage.parseFrom(CodedInputStream.newInstance(buf, offset, length));
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        mMessageListener.onMessage(pairingMessage);
     }
 
 
@@ -3,30 +3,72 @@ package com.telecommande.core.pairing;
 import com.telecommande.core.AndroidRemoteContext;
 import com.telecommande.core.util.Utils;
 import com.telecommande.core.exception.PairingException;
-import com.telecommande.core.ssl.DummyTrustManager;
+import com.telecommande.core.exception.SessionTimeoutException;
+import com.telecommande.core.metrics.TimeoutCounters;
 import com.telecommande.core.ssl.KeyStoreManager;
+import com.telecommande.core.ssl.SslContextCache;
+import com.telecommande.core.wire.BlockingConnector;
+import com.telecommande.core.wire.NioConnection;
+import com.telecommande.core.wire.NioTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.security.GeneralSecurityException;
-import java.security.SecureRandom;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Pairs with a TV on its pairing port as a state machine.
+ * <p>
+ * Each inbound frame, the user's PIN and each step's timeout is an event that moves the session
+ * to its next {@link State}; nothing waits in between. With a {@link NioTransport} the frames
+ * arrive on the transport's selector thread, so any number of pairings share that thread and one
+ * timer thread. Without one, the TCP connect and TLS handshake run on a pooled thread and a
+ * reader thread per session feeds the frames.
+ */
 public class PairingSession {
 
-    private final Logger logger = LoggerFactory.getLogger(PairingSession.class);
+    public enum State {
+        IDLE,
+        CONNECTING,
+        AWAITING_PAIRING_ACK,
+        AWAITING_OPTION,
+        AWAITING_CONFIGURATION_ACK,
+        /**
+         * The TV shows the PIN; waiting for {@link #provideSecret(String)}.
+         */
+        AWAITING_SECRET,
+        AWAITING_SECRET_ACK,
+        PAIRED,
+        FAILED
+    }
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PairingTimer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private final BlockingQueue<Pairingmessage.PairingMessage> mMessagesQueue;
+    private static final Executor CONNECTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "PairingConnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Logger logger = LoggerFactory.getLogger(PairingSession.class);
 
     private final PairingMessageManager mPairingMessageManager;
 
@@ -34,96 +76,337 @@ public class PairingSession {
 
     private SSLSocket mSslSocket;
 
+    private final NioTransport mTransport;
+
+    private NioConnection mConnection;
+
+    private OutputStream mOutputStream;
+    private PairingListener mPairingListener;
+    private String mHost;
+    private State mState = State.IDLE;
+    private CompletableFuture<Void> mFuture;
+    private ScheduledFuture<?> mTimeout;
+    private final PairingTimings mTimings = new PairingTimings();
+
     public PairingSession() {
-        mMessagesQueue = new LinkedBlockingDeque<>();
+        this(null);
+    }
+
+    /**
+     * @param transport shared non-blocking transport, or {@code null} to use a blocking socket
+     *                  with a dedicated reader thread
+     */
+    public PairingSession(NioTransport transport) {
+        mTransport = transport;
         mPairingMessageManager = new PairingMessageManager();
     }
 
+    /**
+     * Pairs and returns once the TV acknowledged the secret, calling
+     * {@link PairingListener#onPaired()} and {@link PairingListener#onSessionEnded()} on the
+     * calling thread.
+     */
     public void pair(String host, int port, PairingListener pairingListener) throws GeneralSecurityException, IOException, InterruptedException, PairingException {
-
-        SSLContext sSLContext = SSLContext.getInstance("TLS");
-        sSLContext.init(new KeyStoreManager().getKeyManagers(), new TrustManager[]{new DummyTrustManager()}, new SecureRandom());
-        SSLSocketFactory sslsocketfactory = sSLContext.getSocketFactory();
-        SSLSocket sSLSocket = (SSLSocket) sslsocketfactory.createSocket(host, port);
-        mSslSocket = sSLSocket;
-//        sSLSocket.setNeedClientAuth(true);
-//        sSLSocket.setUseClientMode(true);
-//        sSLSocket.setKeepAlive(true);
-//        sSLSocket.setTcpNoDelay(true);
-//        sSLSocket.startHandshake();
-
-        pairingListener.onSessionCreated();
-        PairingPacketParser pairingPacketParser = new PairingPacketParser(sSLSocket.getInputStream(), mMessagesQueue);
-        pairingPacketParser.start();
-
-        final OutputStream outputStream = sSLSocket.getOutputStream();
-
-        byte[] pairingMessage = mPairingMessageManager.createPairingMessage(AndroidRemoteContext.getInstance().getClientName(), AndroidRemoteContext.getInstance().getServiceName());
-        outputStream.write(pairingMessage);
-        Pairingmessage.PairingMessage pairingMessageResponse = waitForMessage();
-        logReceivedMessage(pairingMessageResponse.toString());
-
-        byte[] pairingOption = new PairingMessageManager().createPairingOption();
-        outputStream.write(pairingOption);
-        Pairingmessage.PairingMessage pairingOptionAck = waitForMessage();
-        logReceivedMessage(pairingOptionAck.toString());
-
-        byte[] configMessage = new PairingMessageManager().createConfigMessage();
-        outputStream.write(configMessage);
-        Pairingmessage.PairingMessage pairingConfigAck = waitForMessage();
-        logReceivedMessage(pairingConfigAck.toString());
-
-        if (secretProvider != null)
-            secretProvider.requestSecret(this);
-        pairingListener.onSecretRequested();
-        logger.info("Waiting for secret");
-        Pairingmessage.PairingMessage pairingSecretMessage = waitForMessage();
-        byte[] secretMessage = mPairingMessageManager.createSecretMessage(pairingSecretMessage);
-        outputStream.write(secretMessage);
-        Pairingmessage.PairingMessage pairingSecretAck = waitForMessage();
-        logReceivedMessage(pairingSecretAck.toString());
-
+        try {
+            pairAsync(host, port, pairingListener).get();
+        } catch (InterruptedException e) {
+            closeSocket();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof PairingException) {
+                throw (PairingException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new PairingException(String.valueOf(cause), (Exception) cause);
+        }
         pairingListener.onPaired();
         pairingListener.onSessionEnded();
+    }
+
+    /**
+     * Starts pairing without blocking. The future completes once the TV acknowledged the secret,
+     * or fails on a rejected step, a timeout or {@link #closeSocket()}; the connection is closed
+     * either way. Never throws; even a second call fails the returned future. Listener callbacks
+     * run on the thread delivering the event and must not block.
+     */
+    public synchronized CompletableFuture<Void> pairAsync(String host, int port, PairingListener pairingListener) {
+        if (mState != State.IDLE) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("Pairing already started: " + mState));
+            return future;
+        }
+        mHost = host;
+        mPairingListener = pairingListener;
+        mFuture = new CompletableFuture<>();
+        mTimings.start();
+        setState(State.CONNECTING);
+
+        // The identity, DNS lookup and blocking connect can all take a while; the caller may be
+        // a selector or timer thread.
+        CONNECTOR.execute(() -> {
+            try {
+                connect(host, port);
+            } catch (Exception e) {
+                fail(e);
+            }
+        });
+        return mFuture;
+    }
+
+    private void connect(String host, int port) throws Exception {
+        AndroidRemoteContext context = AndroidRemoteContext.getInstance();
+        SSLContext sSLContext = SslContextCache.getInstance().get();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(host), port);
+        if (mTransport != null) {
+            NioConnection connection = mTransport.open(address, host, port, sSLContext);
+            synchronized (this) {
+                if (mState != State.CONNECTING) {
+                    connection.close();
+                    return;
+                }
+                mConnection = connection;
+                mOutputStream = connection.getOutputStream();
+                armTimeout(context.getConnectTimeoutMillis() + context.getHandshakeTimeoutMillis(), SessionTimeoutException.Phase.HANDSHAKE);
+            }
+            connection.getHandshakeFuture().whenComplete((ignored, error) -> {
+                if (error != null) {
+                    fail(error);
+                } else {
+                    onSecureChannel();
+                }
+            });
+            connection.getCloseFuture().whenComplete((ignored, error) -> onClosed());
+            connection.start(new PairingPacketParser(this::onMessage));
+        } else {
+            Socket socket = BlockingConnector.connect(address, context.getConnectTimeoutMillis());
+            SSLSocket sSLSocket = BlockingConnector.startTls(sSLContext, socket, host, port, context.getHandshakeTimeoutMillis());
+            synchronized (this) {
+                if (mState != State.CONNECTING) {
+                    sSLSocket.close();
+                    return;
+                }
+                mSslSocket = sSLSocket;
+                mOutputStream = sSLSocket.getOutputStream();
+            }
+            new PairingPacketParser(sSLSocket.getInputStream(), this::onMessage) {
+                @Override
+                public void run() {
+                    super.run();
+                    onClosed();
+                }
+            }.start();
+            onSecureChannel();
+        }
+    }
 
+    public synchronized State getState() {
+        return mState;
     }
 
+    /**
+     * Step durations so far; complete once the future returned by {@link #pairAsync} is done.
+     */
+    public PairingTimings getTimings() {
+        return mTimings;
+    }
 
-    Pairingmessage.PairingMessage waitForMessage() throws InterruptedException, PairingException {
-        Pairingmessage.PairingMessage pairingMessage = mMessagesQueue.take();
+    /**
+     * Hands over the PIN shown on the TV. A PIN that does not match the TV's certificate is
+     * rejected locally: nothing is sent, no {@link PairingListener} callback fires and the session
+     * keeps waiting, so the caller should check the result and ask for the PIN again.
+     *
+     * @return {@code true} if the PIN matched and was sent, {@code false} if it did not match or
+     * the session is not waiting for a PIN
+     */
+    public boolean provideSecret(String secret) {
+        return createCodeSecret(secret);
+    }
+
+    private synchronized boolean createCodeSecret(String code) {
+        if (mState != State.AWAITING_SECRET) {
+            logger.warn("Ignoring secret for {} in state {}", mHost, mState);
+            return false;
+        }
+        byte[] alpha = computeAlpha(code);
+        if (alpha == null) {
+            // Not an error: the TV keeps waiting, so the caller simply asks for the PIN again.
+            logger.info("PIN for {} does not match", mHost);
+            return false;
+        }
+        mTimings.mark(PairingTimings.Step.SECRET_ENTRY);
+        Pairingmessage.PairingMessage secretMessageProto = mPairingMessageManager.createSecretMessageProto(alpha);
+        if (send(mPairingMessageManager.createSecretMessage(secretMessageProto))) {
+            setState(State.AWAITING_SECRET_ACK);
+            armTimeout(AndroidRemoteContext.getInstance().getMessageTimeoutMillis(), SessionTimeoutException.Phase.MESSAGE);
+        }
+        return true;
+    }
+
+    /**
+     * The PIN is six hex digits: a check byte, then the nonce. The secret sent to the TV is the
+     * hash of both certificates' keys and the nonce, whose first byte must equal the check byte.
+     *
+     * @return the secret, or {@code null} if the PIN is malformed or does not match
+     */
+    private byte[] computeAlpha(String code) {
+        try {
+            if (code == null || code.length() < 4 || code.length() % 2 != 0) {
+                return null;
+            }
+            SSLSession session = getSslSession();
+            PairingChallengeResponse pairingChallengeResponse = new PairingChallengeResponse(Utils.getLocalCert(session), Utils.getPeerCert(session));
+            byte[] check = Utils.hexStringToBytes(code.substring(0, 2));
+            byte[] alpha = pairingChallengeResponse.getAlpha(Utils.hexStringToBytes(code.substring(2)));
+            return alpha[0] == check[0] ? alpha : null;
+        } catch (PairingException | RuntimeException e) {
+            logger.debug("Cannot check PIN: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized void onSecureChannel() {
+        if (mState != State.CONNECTING) {
+            return;
+        }
+        mTimings.mark(PairingTimings.Step.CONNECT);
+        mPairingListener.onSessionCreated();
+        AndroidRemoteContext context = AndroidRemoteContext.getInstance();
+        if (send(mPairingMessageManager.createPairingMessage(context.getClientName(), context.getServiceName()))) {
+            expectNext(State.AWAITING_PAIRING_ACK);
+        }
+    }
+
+    private synchronized void onMessage(Pairingmessage.PairingMessage pairingMessage) {
+        logReceivedMessage(pairingMessage.toString());
+        if (mState == State.PAIRED || mState == State.FAILED) {
+            return;
+        }
         if (pairingMessage.getStatus() != Pairingmessage.PairingMessage.Status.STATUS_OK) {
-            throw new PairingException(pairingMessage.toString());
+            fail(new PairingException("TV answered " + pairingMessage.getStatus() + " in state " + mState));
+            return;
         }
-        return pairingMessage;
+        switch (mState) {
+            case AWAITING_PAIRING_ACK:
+                if (pairingMessage.hasPairingRequestAck()) {
+                    mTimings.mark(PairingTimings.Step.PAIRING_REQUEST);
+                    if (send(mPairingMessageManager.createPairingOption())) {
+                        expectNext(State.AWAITING_OPTION);
+                    }
+                    return;
+                }
+                break;
+            case AWAITING_OPTION:
+                if (pairingMessage.hasPairingOption()) {
+                    mTimings.mark(PairingTimings.Step.OPTION);
+                    if (send(mPairingMessageManager.createConfigMessage())) {
+                        expectNext(State.AWAITING_CONFIGURATION_ACK);
+                    }
+                    return;
+                }
+                break;
+            case AWAITING_CONFIGURATION_ACK:
+                if (pairingMessage.hasPairingConfigurationAck()) {
+                    mTimings.mark(PairingTimings.Step.CONFIGURATION);
+                    setState(State.AWAITING_SECRET);
+                    armTimeout(AndroidRemoteContext.getInstance().getSecretTimeoutMillis(), SessionTimeoutException.Phase.MESSAGE);
+                    logger.info("Waiting for secret");
+                    if (secretProvider != null)
+                        secretProvider.requestSecret(this);
+                    mPairingListener.onSecretRequested();
+                    return;
+                }
+                break;
+            case AWAITING_SECRET_ACK:
+                if (pairingMessage.hasPairingSecretAck()) {
+                    mTimings.mark(PairingTimings.Step.SECRET_ACK);
+                    cancelTimeout();
+                    setState(State.PAIRED);
+                    logger.info("Paired with {}: {}", mHost, mTimings);
+                    try {
+                        KeyStoreManager.markPaired(AndroidRemoteContext.getInstance().getKeyStoreFile());
+                    } catch (IllegalStateException e) {
+                        logger.warn("Paired with {} but could not record it: {}", mHost, e.getMessage());
+                    }
+                    closeConnection();
+                    mFuture.complete(null);
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        logger.debug("Ignoring unexpected pairing message in state {}", mState);
     }
 
+    private synchronized void onClosed() {
+        if (mState != State.PAIRED && mState != State.FAILED) {
+            fail(new IOException("TV closed the pairing connection in state " + mState));
+        }
+    }
 
-    public void provideSecret(String secret) {
-        createCodeSecret(secret);
+    private void expectNext(State state) {
+        setState(state);
+        armTimeout(AndroidRemoteContext.getInstance().getMessageTimeoutMillis(), SessionTimeoutException.Phase.MESSAGE);
     }
 
-    private void createCodeSecret(String code) {
-        code = code.substring(2);
-        PairingChallengeResponse pairingChallengeResponse = new PairingChallengeResponse(Utils.getLocalCert(mSslSocket.getSession()), Utils.getPeerCert(mSslSocket.getSession()));
-        byte[] secret = Utils.hexStringToBytes(code);
-        System.out.println(Arrays.toString(secret));
+    private boolean send(byte[] frame) {
         try {
-            pairingChallengeResponse.checkGamma(secret);
-        } catch (PairingException e) {
-            throw new RuntimeException(e);
+            mOutputStream.write(frame);
+            return true;
+        } catch (IOException e) {
+            fail(e);
+            return false;
         }
-        byte[] pairingChallengeResponseAlpha;
-        try {
-            pairingChallengeResponseAlpha = pairingChallengeResponse.getAlpha(secret);
-        } catch (PairingException e) {
-            throw new RuntimeException(e);
+    }
+
+    private void armTimeout(long timeoutMillis, SessionTimeoutException.Phase phase) {
+        cancelTimeout();
+        State state = mState;
+        mTimeout = TIMER.schedule(() -> onTimeout(state, timeoutMillis, phase), timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onTimeout(State state, long timeoutMillis, SessionTimeoutException.Phase phase) {
+        if (mState == state) {
+            fail(TimeoutCounters.count(new SessionTimeoutException(phase,
+                    "Pairing with " + mHost + " stuck in " + state + " for " + timeoutMillis + " ms")));
         }
-        Pairingmessage.PairingMessage secretMessageProto = new PairingMessageManager().createSecretMessageProto(pairingChallengeResponseAlpha);
-        try {
-            mMessagesQueue.put(secretMessageProto);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+    }
+
+    private void cancelTimeout() {
+        if (mTimeout != null) {
+            mTimeout.cancel(false);
+            mTimeout = null;
+        }
+    }
+
+    private synchronized void fail(Throwable error) {
+        if (mState == State.PAIRED || mState == State.FAILED) {
+            return;
         }
+        logger.warn("Pairing with {} failed in state {}: {}", mHost, mState, error.getMessage());
+        cancelTimeout();
+        setState(State.FAILED);
+        // Never leave a half-open socket or reader thread behind a failed or timed-out pairing.
+        closeConnection();
+        mFuture.completeExceptionally(error);
+    }
+
+    private void setState(State state) {
+        logger.debug("Pairing with {}: {} -> {}", mHost, mState, state);
+        mState = state;
+    }
+
+    private SSLSession getSslSession() {
+        return mConnection != null ? mConnection.getSession() : mSslSocket.getSession();
     }
 
     void logSendMessage(String message) {
@@ -134,7 +417,24 @@ public class PairingSession {
         logger.info("Received Message : {}", message);
     }
 
+    /**
+     * Aborts a pairing in progress, failing its future, and closes the connection.
+     */
     public void closeSocket() {
+        synchronized (this) {
+            if (mState != State.IDLE) {
+                fail(new IOException("Pairing cancelled"));
+            }
+        }
+        closeConnection();
+    }
+
+    private synchronized void closeConnection() {
+        if (mConnection != null) {
+            logger.debug("Closing PairingSession NioConnection.");
+            mConnection.close();
+            mConnection = null;
+        }
         if (mSslSocket != null && !mSslSocket.isClosed()) {
             logger.debug("Closing PairingSession SSLSocket.");
             try {
@@ -145,4 +445,4 @@ public class PairingSession {
         }
         mSslSocket = null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+package com.telecommande.core.pairing;
+
+import java.util.Locale;
+
+/**
+ * Per-step durations of one {@link PairingSession}.
+ */
+public class PairingTimings {
+
+    public enum Step {
+        /**
+         * Getting the TLS context, TCP connect and TLS handshake.
+         */
+        CONNECT,
+        /**
+         * {@code PairingRequest} until its ack.
+         */
+        PAIRING_REQUEST,
+        /**
+         * {@code PairingOption} until the TV's option.
+         */
+        OPTION,
+        /**
+         * {@code PairingConfiguration} until its ack.
+         */
+        CONFIGURATION,
+        /**
+         * Waiting for the user to type the PIN shown on the TV.
+         */
+        SECRET_ENTRY,
+        /**
+         * {@code PairingSecret} until its ack.
+         */
+        SECRET_ACK
+    }
+
+    private static final Step[] STEPS = Step.values();
+
+    private final long[] mDurations = new long[STEPS.length];
+    private long mStartNanos;
+    private long mLastMarkNanos;
+    private long mTotalNanos;
+
+    void start() {
+        mStartNanos = System.nanoTime();
+        mLastMarkNanos = mStartNanos;
+    }
+
+    /**
+     * Ends {@code step}, which is taken to have started when the previous one ended.
+     */
+    void mark(Step step) {
+        long now = System.nanoTime();
+        mDurations[step.ordinal()] = now - mLastMarkNanos;
+        mLastMarkNanos = now;
+        mTotalNanos = now - mStartNanos;
+    }
+
+    public long getNanos(Step step) {
+        return mDurations[step.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    /**
+     * Total minus {@link Step#SECRET_ENTRY}, i.e. the time spent on the network and the TV.
+     */
+    public long getMachineNanos() {
+        return mTotalNanos - mDurations[Step.SECRET_ENTRY.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Step step : STEPS) {
+            builder.append(step.name().toLowerCase(Locale.US)).append('=')
+                    .append(String.format(Locale.US, "%.1f", mDurations[step.ordinal()] / 1e6)).append("ms ");
+        }
+        return builder.append("total=").append(String.format(Locale.US, "%.1f", mTotalNanos / 1e6)).append("ms").toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.telecommande.core.pairing;
+
+import com.telecommande.core.metrics.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of {@link FleetProvisioner#provision}, one {@link TvResult} per host in completion
+ * order.
+ */
+public class ProvisioningReport {
+
+    private final List<TvResult> mResults;
+    private final long mDurationNanos;
+    private final LatencyHistogram mMachineLatency = new LatencyHistogram();
+    private final int mPaired;
+
+    ProvisioningReport(List<TvResult> results, long durationNanos) {
+        mResults = Collections.unmodifiableList(results);
+        mDurationNanos = durationNanos;
+        int paired = 0;
+        for (TvResult result : results) {
+            if (result.isPaired()) {
+                paired++;
+                mMachineLatency.record(result.getTimings().getMachineNanos());
+            }
+        }
+        mPaired = paired;
+    }
+
+    public List<TvResult> getResults() {
+        return mResults;
+    }
+
+    /**
+     * Failure reason per host that did not pair.
+     */
+    public Map<String, Throwable> getFailures() {
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (TvResult result : mResults) {
+            if (!result.isPaired()) {
+                failures.put(result.getHost(), result.getError());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Time from the provision call until the last TV paired or failed.
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * Per-TV pairing time excluding PIN entry, i.e. what the network and the TVs cost.
+     */
+    public LatencyHistogram getMachineLatency() {
+        return mMachineLatency;
+    }
+
+    public int getPairedCount() {
+        return mPaired;
+    }
+
+    public int getFailedCount() {
+        return mResults.size() - mPaired;
+    }
+
+    public double getPairedPerMinute() {
+        return mDurationNanos > 0 ? mPaired * (double) TimeUnit.MINUTES.toNanos(1) / mDurationNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "paired=" + mPaired + " failed=" + getFailedCount()
+                + " duration=" + mDurationNanos / 1_000_000 + "ms"
+                + String.format(Locale.US, " rate=%.1f/min", getPairedPerMinute())
+                + " machine[" + mMachineLatency + "]";
+    }
+
+    public static final class TvResult {
+        private final String mHost;
+        private final PairingTimings mTimings;
+        private final int mWrongPinCount;
+        private final Throwable mError;
+
+        TvResult(String host, PairingTimings timings, int wrongPinCount, Throwable error) {
+            mHost = host;
+            mTimings = timings;
+            mWrongPinCount = wrongPinCount;
+            mError = error;
+        }
+
+        public String getHost() {
+            return mHost;
+        }
+
+        /**
+         * Step durations, or {@code null} if pairing never started.
+         */
+        public PairingTimings getTimings() {
+            return mTimings;
+        }
+
+        /**
+         * PINs rejected locally before the right one was entered.
+         */
+        public int getWrongPinCount() {
+            return mWrongPinCount;
+        }
+
+        public boolean isPaired() {
+            return mError == null;
+        }
+
+        public Throwable getError() {
+            return mError;
+        }
+
+        @Override
+        public String toString() {
+            return mHost + (mError == null ? " paired " + mTimings : " failed: " + mError.getMessage());
+        }
+    }
+}
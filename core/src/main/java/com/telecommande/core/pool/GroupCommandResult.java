@@ -0,0 +1,99 @@
+package com.telecommande.core.pool;
+
+import com.telecommande.core.metrics.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link TvSessionPool#broadcast}, one {@link TvResult} per targeted host.
+ */
+public class GroupCommandResult {
+
+    private final List<TvResult> mResults;
+    private final long mDurationNanos;
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final int mSucceeded;
+
+    GroupCommandResult(List<TvResult> results, long durationNanos) {
+        mResults = Collections.unmodifiableList(results);
+        mDurationNanos = durationNanos;
+        int succeeded = 0;
+        for (TvResult result : results) {
+            if (result.isSuccess()) {
+                succeeded++;
+                mLatency.record(result.getLatencyNanos());
+            }
+        }
+        mSucceeded = succeeded;
+    }
+
+    public List<TvResult> getResults() {
+        return mResults;
+    }
+
+    /**
+     * Time from the broadcast call until the last TV completed or failed.
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * Per-TV latencies of the successful sends.
+     */
+    public LatencyHistogram getLatency() {
+        return mLatency;
+    }
+
+    public int getSucceededCount() {
+        return mSucceeded;
+    }
+
+    public int getFailedCount() {
+        return mResults.size() - mSucceeded;
+    }
+
+    @Override
+    public String toString() {
+        return "succeeded=" + mSucceeded + " failed=" + getFailedCount()
+                + " duration=" + mDurationNanos / 1_000_000 + "ms latency[" + mLatency + "]";
+    }
+
+    public static final class TvResult {
+        private final String mHost;
+        private final long mLatencyNanos;
+        private final Throwable mError;
+
+        TvResult(String host, long latencyNanos, Throwable error) {
+            mHost = host;
+            mLatencyNanos = latencyNanos;
+            mError = error;
+        }
+
+        public String getHost() {
+            return mHost;
+        }
+
+        /**
+         * Time from the broadcast call until this TV's frame was handed to its socket, including
+         * the connect if the session was not open yet.
+         */
+        public long getLatencyNanos() {
+            return mLatencyNanos;
+        }
+
+        public boolean isSuccess() {
+            return mError == null;
+        }
+
+        public Throwable getError() {
+            return mError;
+        }
+
+        @Override
+        public String toString() {
+            return mHost + (mError == null ? " ok " + mLatencyNanos / 1_000 + "us" : " failed: " + mError.getMessage());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.telecommande.core.pool;
+
+import com.telecommande.core.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for one TV in a {@link TvSessionPool}, or for the whole pool.
+ */
+public class TvMetrics {
+
+    private final LatencyHistogram mConnectLatency = new LatencyHistogram();
+    private final AtomicLong mConnectFailures = new AtomicLong();
+    private final AtomicLong mCommandsSent = new AtomicLong();
+    private final AtomicLong mCommandFailures = new AtomicLong();
+    private final AtomicLong mIdleCloses = new AtomicLong();
+
+    void onConnected(long durationNanos) {
+        mConnectLatency.record(durationNanos);
+    }
+
+    void onConnectFailed() {
+        mConnectFailures.incrementAndGet();
+    }
+
+    void onCommandSent() {
+        mCommandsSent.incrementAndGet();
+    }
+
+    void onCommandFailed() {
+        mCommandFailures.incrementAndGet();
+    }
+
+    void onIdleClose() {
+        mIdleCloses.incrementAndGet();
+    }
+
+    public LatencyHistogram getConnectLatency() {
+        return mConnectLatency;
+    }
+
+    public long getConnectCount() {
+        return mConnectLatency.getCount();
+    }
+
+    public long getConnectFailures() {
+        return mConnectFailures.get();
+    }
+
+    public long getCommandsSent() {
+        return mCommandsSent.get();
+    }
+
+    public long getCommandFailures() {
+        return mCommandFailures.get();
+    }
+
+    public long getIdleCloses() {
+        return mIdleCloses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "connects[" + mConnectLatency + "] connectFailures=" + getConnectFailures()
+                + " commandsSent=" + getCommandsSent() + " commandFailures=" + getCommandFailures()
+                + " idleCloses=" + getIdleCloses();
+    }
+}
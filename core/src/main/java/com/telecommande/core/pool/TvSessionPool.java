@@ -0,0 +1,326 @@
+package com.telecommande.core.pool;
+
+import com.telecommande.core.remote.RemoteMessageManager;
+import com.telecommande.core.remote.RemoteSession;
+import com.telecommande.core.remote.Remotemessage;
+import com.telecommande.core.wire.NioTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one {@link RemoteSession} per TV host so several TVs can be driven at once.
+ * <p>
+ * Every session shares the pool's {@link NioTransport}, so all sockets are serviced by one
+ * selector thread, and the cached {@code SSLContext} of the paired identity. A connect holds a
+ * thread until the TV has answered the handshake, so up to {@link #setMaxConcurrentConnects(int)}
+ * of them run side by side and a broadcast reaches every TV in about one connect time; sessions
+ * not used for the idle timeout are closed and transparently reopened on next use.
+ */
+public class TvSessionPool implements Closeable {
+
+    public static final int REMOTE_PORT = 6466;
+
+    private static final int DEFAULT_MAX_CONCURRENT_CONNECTS = 16;
+    private static final long CONNECT_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private final Logger logger = LoggerFactory.getLogger(TvSessionPool.class);
+    private final NioTransport mTransport;
+    private final boolean isOwnTransport;
+    private final ThreadPoolExecutor mConnectExecutor;
+    private final ScheduledExecutorService mIdleScheduler;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final TvMetrics mAggregateMetrics = new TvMetrics();
+    private final RemoteMessageManager mMessageManager = new RemoteMessageManager();
+    private final long mIdleTimeoutNanos;
+    private volatile boolean isClosed = false;
+
+    public TvSessionPool(long idleTimeout, TimeUnit unit) throws IOException {
+        this(new NioTransport("TvSessionPool"), true, idleTimeout, unit);
+    }
+
+    /**
+     * @param transport shared transport, which the pool does not close
+     */
+    public TvSessionPool(NioTransport transport, long idleTimeout, TimeUnit unit) {
+        this(transport, false, idleTimeout, unit);
+    }
+
+    private TvSessionPool(NioTransport transport, boolean ownTransport, long idleTimeout, TimeUnit unit) {
+        mTransport = transport;
+        isOwnTransport = ownTransport;
+        mIdleTimeoutNanos = unit.toNanos(idleTimeout);
+        // Threads are only started for connects actually in flight and go away once idle.
+        mConnectExecutor = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENT_CONNECTS, DEFAULT_MAX_CONCURRENT_CONNECTS,
+                CONNECT_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> daemon(runnable, "TvSessionPool-connect"));
+        mConnectExecutor.allowCoreThreadTimeOut(true);
+        mIdleScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "TvSessionPool-idle"));
+        long period = Math.max(TimeUnit.SECONDS.toNanos(1), mIdleTimeoutNanos / 4);
+        mIdleScheduler.scheduleWithFixedDelay(this::closeIdleSessions, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Limits how many TVs connect at once; further connects wait for a slot. Each one holds a
+     * thread for the TCP, TLS and remote handshakes.
+     */
+    public void setMaxConcurrentConnects(int maxConcurrentConnects) {
+        int size = Math.max(1, maxConcurrentConnects);
+        synchronized (mConnectExecutor) {
+            // The core size may never exceed the maximum, so resize in the order that keeps it so.
+            if (size > mConnectExecutor.getMaximumPoolSize()) {
+                mConnectExecutor.setMaximumPoolSize(size);
+                mConnectExecutor.setCorePoolSize(size);
+            } else {
+                mConnectExecutor.setCorePoolSize(size);
+                mConnectExecutor.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    public int getMaxConcurrentConnects() {
+        return mConnectExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * Returns the connected session for {@code host}, connecting it first if needed. Concurrent
+     * callers for the same host share one connect.
+     */
+    public CompletableFuture<RemoteSession> acquire(String host) {
+        if (isClosed) {
+            return failed(new IOException("TvSessionPool closed"));
+        }
+        Entry entry = mEntries.computeIfAbsent(host, Entry::new);
+        return entry.acquire();
+    }
+
+    public CompletableFuture<Void> sendCommand(String host, Remotemessage.RemoteKeyCode keyCode, Remotemessage.RemoteDirection direction) {
+        return sendFrame(host, mMessageManager.createKeyCommand(keyCode, direction));
+    }
+
+    private CompletableFuture<Void> sendFrame(String host, byte[] frame) {
+        if (isClosed) {
+            return failed(new IOException("TvSessionPool closed"));
+        }
+        Entry entry = mEntries.computeIfAbsent(host, Entry::new);
+        return entry.acquire()
+                .thenCompose(session -> session.sendFrame(frame))
+                .whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        entry.mMetrics.onCommandSent();
+                        mAggregateMetrics.onCommandSent();
+                    } else {
+                        entry.mMetrics.onCommandFailed();
+                        mAggregateMetrics.onCommandFailed();
+                    }
+                });
+    }
+
+    /**
+     * Sends one key frame to every host in parallel. The frame is encoded once and the same
+     * array is queued on each session, connecting any that are not open yet. The returned future
+     * never fails; per-TV errors are reported in the result.
+     */
+    public CompletableFuture<GroupCommandResult> broadcast(Collection<String> hosts, Remotemessage.RemoteKeyCode keyCode,
+                                                           Remotemessage.RemoteDirection direction) {
+        long start = System.nanoTime();
+        byte[] frame = mMessageManager.createKeyCommand(keyCode, direction);
+        List<CompletableFuture<GroupCommandResult.TvResult>> sends = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            sends.add(sendFrame(host, frame).handle((ignored, error) ->
+                    new GroupCommandResult.TvResult(host, System.nanoTime() - start, unwrap(error))));
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<GroupCommandResult.TvResult> results = new ArrayList<>(sends.size());
+            for (CompletableFuture<GroupCommandResult.TvResult> send : sends) {
+                results.add(send.join());
+            }
+            return new GroupCommandResult(results, System.nanoTime() - start);
+        });
+    }
+
+    /**
+     * Broadcasts to every host the pool currently knows.
+     */
+    public CompletableFuture<GroupCommandResult> broadcast(Remotemessage.RemoteKeyCode keyCode, Remotemessage.RemoteDirection direction) {
+        return broadcast(getHosts(), keyCode, direction);
+    }
+
+    /**
+     * Closes the session for {@code host}, if any; its metrics are kept.
+     */
+    public void release(String host) {
+        Entry entry = mEntries.get(host);
+        if (entry != null) {
+            entry.close();
+        }
+    }
+
+    public List<String> getHosts() {
+        return Collections.unmodifiableList(new ArrayList<>(mEntries.keySet()));
+    }
+
+    public boolean isConnected(String host) {
+        Entry entry = mEntries.get(host);
+        return entry != null && entry.isConnected();
+    }
+
+    /**
+     * Metrics for {@code host}, or {@code null} if the pool has never seen it.
+     */
+    public TvMetrics getMetrics(String host) {
+        Entry entry = mEntries.get(host);
+        return entry != null ? entry.mMetrics : null;
+    }
+
+    public TvMetrics getAggregateMetrics() {
+        return mAggregateMetrics;
+    }
+
+    public NioTransport getTransport() {
+        return mTransport;
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        mIdleScheduler.shutdownNow();
+        for (Entry entry : mEntries.values()) {
+            entry.close();
+        }
+        mEntries.clear();
+        mConnectExecutor.shutdownNow();
+        if (isOwnTransport) {
+            mTransport.close();
+        }
+    }
+
+    private void closeIdleSessions() {
+        long now = System.nanoTime();
+        for (Entry entry : mEntries.values()) {
+            if (entry.isConnected() && now - entry.mLastUsedNanos > mIdleTimeoutNanos) {
+                logger.debug("Closing idle session to {}", entry.mHost);
+                entry.mMetrics.onIdleClose();
+                mAggregateMetrics.onIdleClose();
+                entry.close();
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    private final class Entry {
+        private final String mHost;
+        private final TvMetrics mMetrics = new TvMetrics();
+        private RemoteSession mSession;
+        private CompletableFuture<RemoteSession> mPending;
+        private volatile long mLastUsedNanos = System.nanoTime();
+
+        Entry(String host) {
+            mHost = host;
+        }
+
+        synchronized CompletableFuture<RemoteSession> acquire() {
+            mLastUsedNanos = System.nanoTime();
+            if (mSession != null && mSession.isConnected()) {
+                return CompletableFuture.completedFuture(mSession);
+            }
+            if (mPending != null) {
+                return mPending;
+            }
+            if (mSession != null) {
+                mSession.closeSocket();
+                mSession = null;
+            }
+            CompletableFuture<RemoteSession> pending = new CompletableFuture<>();
+            mPending = pending;
+            mConnectExecutor.execute(() -> connect(pending));
+            return pending;
+        }
+
+        private void connect(CompletableFuture<RemoteSession> pending) {
+            long start = System.nanoTime();
+            String[] error = new String[1];
+            RemoteSession session = new RemoteSession(mHost, REMOTE_PORT, new RemoteSession.RemoteSessionListener() {
+                @Override
+                public void onConnected() {
+                }
+
+                @Override
+                public void onSslError() {
+                    error[0] = "SSL error";
+                }
+
+                @Override
+                public void onDisconnected() {
+                }
+
+                @Override
+                public void onError(String message) {
+                    error[0] = message;
+                }
+            }, mTransport);
+            try {
+                session.connect();
+            } catch (Exception e) {
+                error[0] = e.getMessage();
+            }
+            synchronized (this) {
+                mPending = null;
+                if (session.isConnected() && !isClosed) {
+                    long duration = System.nanoTime() - start;
+                    mSession = session;
+                    mMetrics.onConnected(duration);
+                    mAggregateMetrics.onConnected(duration);
+                    pending.complete(session);
+                } else {
+                    session.closeSocket();
+                    mMetrics.onConnectFailed();
+                    mAggregateMetrics.onConnectFailed();
+                    pending.completeExceptionally(new IOException("Could not connect to " + mHost
+                            + (error[0] != null ? ": " + error[0] : "")));
+                }
+            }
+        }
+
+        synchronized boolean isConnected() {
+            return mSession != null && mSession.isConnected();
+        }
+
+        synchronized void close() {
+            if (mSession != null) {
+                mSession.closeSocket();
+                mSession = null;
+            }
+        }
+    }
+}
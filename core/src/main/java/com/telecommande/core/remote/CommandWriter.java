@@ -0,0 +1,217 @@
+package com.telecommande.core.remote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends framed commands from a dedicated thread so callers never block on the socket.
+ * <p>
+ * Commands queued while a write is in progress are concatenated and written with a single
+ * {@link OutputStream#write(byte[], int, int)}, which the TLS layer turns into one record.
+ */
+public class CommandWriter {
+
+    public enum OverflowPolicy {
+        /**
+         * Fail the new command with a {@link RejectedExecutionException}.
+         */
+        DROP,
+        /**
+         * Block the caller until there is room. Do not submit from the UI thread with this policy.
+         */
+        BLOCK,
+        /**
+         * Merge an idempotent command, such as an IME edit re-sent while the TV is slow, into an
+         * identical one that is still queued; drop anything else like {@link #DROP}. Key presses
+         * are never merged, since a second press is deliberate. Never blocks, so it is safe to
+         * submit from the UI thread.
+         */
+        COALESCE
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CommandWriter.class);
+    private final OutputStream mOutputStream;
+    private final BlockingQueue<Command> mQueue;
+    private final OverflowPolicy mOverflowPolicy;
+    private final Thread mThread;
+    private final AtomicLong mSentCount = new AtomicLong();
+    private final AtomicLong mBatchCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private byte[] mBatchBuffer = new byte[256];
+    private volatile IOException mFailure;
+    private volatile boolean isClosed = false;
+
+    public CommandWriter(OutputStream outputStream, int capacity, OverflowPolicy overflowPolicy, String name) {
+        mOutputStream = outputStream;
+        mQueue = new ArrayBlockingQueue<>(capacity);
+        mOverflowPolicy = overflowPolicy;
+        mThread = new Thread(this::run, name);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Queues an already framed command that is not idempotent, such as a key press.
+     */
+    public CompletableFuture<Void> submit(byte[] frame) {
+        return submit(frame, false);
+    }
+
+    /**
+     * Queues an already framed command. The returned future completes once the frame has been
+     * handed to the socket, or exceptionally if it was dropped or the write failed.
+     *
+     * @param isIdempotent whether sending the frame twice has the same effect as sending it once;
+     *                     only such frames are merged under {@link OverflowPolicy#COALESCE}
+     */
+    public CompletableFuture<Void> submit(byte[] frame, boolean isIdempotent) {
+        if (isClosed) {
+            return failed(mFailure != null ? mFailure : new IOException("CommandWriter closed"));
+        }
+        Command command = new Command(frame, isIdempotent);
+        if (mQueue.offer(command)) {
+            return queued(command);
+        }
+        switch (mOverflowPolicy) {
+            case BLOCK:
+                return put(command);
+            case COALESCE:
+                if (isIdempotent) {
+                    for (Command queued : mQueue) {
+                        if (queued.isIdempotent && (queued.mFrame == frame || Arrays.equals(queued.mFrame, frame))) {
+                            mCoalescedCount.incrementAndGet();
+                            return queued.mFuture;
+                        }
+                    }
+                }
+                mDroppedCount.incrementAndGet();
+                return failed(new RejectedExecutionException("Send queue full"));
+            case DROP:
+            default:
+                mDroppedCount.incrementAndGet();
+                return failed(new RejectedExecutionException("Send queue full"));
+        }
+    }
+
+    public void close() {
+        isClosed = true;
+        mThread.interrupt();
+    }
+
+    public long getSentCount() {
+        return mSentCount.get();
+    }
+
+    public long getBatchCount() {
+        return mBatchCount.get();
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    private void run() {
+        List<Command> batch = new ArrayList<>();
+        try {
+            while (!isClosed) {
+                batch.add(mQueue.take());
+                mQueue.drainTo(batch);
+                int length = 0;
+                for (Command command : batch) {
+                    length += command.mFrame.length;
+                }
+                if (mBatchBuffer.length < length) {
+                    mBatchBuffer = new byte[Math.max(length, mBatchBuffer.length * 2)];
+                }
+                int offset = 0;
+                for (Command command : batch) {
+                    System.arraycopy(command.mFrame, 0, mBatchBuffer, offset, command.mFrame.length);
+                    offset += command.mFrame.length;
+                }
+                try {
+                    mOutputStream.write(mBatchBuffer, 0, length);
+                    mOutputStream.flush();
+                } catch (IOException e) {
+                    logger.error("Failed to send {} command(s): {}", batch.size(), e.getMessage());
+                    mFailure = e;
+                    isClosed = true;
+                    for (Command command : batch) {
+                        command.mFuture.completeExceptionally(e);
+                    }
+                    batch.clear();
+                    break;
+                }
+                mBatchCount.incrementAndGet();
+                mSentCount.addAndGet(batch.size());
+                for (Command command : batch) {
+                    command.mFuture.complete(null);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+        for (Command command : batch) {
+            command.mFuture.completeExceptionally(new IOException("CommandWriter closed"));
+        }
+        drainAndFail(mFailure != null ? mFailure : new IOException("CommandWriter closed"));
+    }
+
+    private CompletableFuture<Void> put(Command command) {
+        try {
+            mQueue.put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(e);
+        }
+        return queued(command);
+    }
+
+    private CompletableFuture<Void> queued(Command command) {
+        if (isClosed) {
+            // Raced with close(); the writer thread may already have drained the queue.
+            drainAndFail(mFailure != null ? mFailure : new IOException("CommandWriter closed"));
+        }
+        return command.mFuture;
+    }
+
+    private void drainAndFail(IOException cause) {
+        Command command;
+        while ((command = mQueue.poll()) != null) {
+            command.mFuture.completeExceptionally(cause);
+        }
+    }
+
+    private static CompletableFuture<Void> failed(Throwable cause) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    private static final class Command {
+        private final byte[] mFrame;
+        private final boolean isIdempotent;
+        private final CompletableFuture<Void> mFuture = new CompletableFuture<>();
+
+        Command(byte[] frame, boolean idempotent) {
+            mFrame = frame;
+            isIdempotent = idempotent;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.telecommande.core.remote;
+
+import com.telecommande.core.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the {@link ConnectTimings} of every successful {@link RemoteSession} connect, per
+ * phase, both overall and per TV host, and forwards each one to registered listeners.
+ * <p>
+ * Comparing a host's phases with the fleet tells a slow TV (first message, configure ack) from
+ * slow Wi-Fi (TCP connect, TLS handshake).
+ */
+public final class ConnectMetrics {
+
+    public interface Listener {
+        void onConnectTimings(String host, ConnectTimings timings);
+    }
+
+    private static final ConnectMetrics INSTANCE = new ConnectMetrics();
+
+    private final PhaseHistograms mOverall = new PhaseHistograms();
+    private final Map<String, PhaseHistograms> mByHost = new ConcurrentHashMap<>();
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong mHandshakeFallbackCount = new AtomicLong();
+
+    private ConnectMetrics() {
+    }
+
+    public static ConnectMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    void record(String host, ConnectTimings timings) {
+        mOverall.record(timings);
+        mByHost.computeIfAbsent(host, k -> new PhaseHistograms()).record(timings);
+        for (Listener listener : mListeners) {
+            listener.onConnectTimings(host, timings);
+        }
+    }
+
+    void recordHandshakeFallback() {
+        mHandshakeFallbackCount.incrementAndGet();
+    }
+
+    /**
+     * Pipelined handshakes that failed and were redone with the strict sequence.
+     */
+    public long getHandshakeFallbackCount() {
+        return mHandshakeFallbackCount.get();
+    }
+
+    public PhaseHistograms getOverall() {
+        return mOverall;
+    }
+
+    /**
+     * Histograms for {@code host}, or {@code null} if it never connected.
+     */
+    public PhaseHistograms getForHost(String host) {
+        return mByHost.get(host);
+    }
+
+    public void reset() {
+        mOverall.reset();
+        mByHost.clear();
+        mHandshakeFallbackCount.set(0);
+    }
+
+    public static final class PhaseHistograms {
+        private final LatencyHistogram[] mPhases = new LatencyHistogram[ConnectTimings.Phase.values().length];
+        private final LatencyHistogram mTotal = new LatencyHistogram();
+
+        PhaseHistograms() {
+            for (int i = 0; i < mPhases.length; i++) {
+                mPhases[i] = new LatencyHistogram();
+            }
+        }
+
+        void record(ConnectTimings timings) {
+            for (ConnectTimings.Phase phase : ConnectTimings.Phase.values()) {
+                mPhases[phase.ordinal()].record(timings.getNanos(phase));
+            }
+            mTotal.record(timings.getTotalNanos());
+        }
+
+        void reset() {
+            for (LatencyHistogram histogram : mPhases) {
+                histogram.reset();
+            }
+            mTotal.reset();
+        }
+
+        public LatencyHistogram get(ConnectTimings.Phase phase) {
+            return mPhases[phase.ordinal()];
+        }
+
+        public LatencyHistogram getTotal() {
+            return mTotal;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (ConnectTimings.Phase phase : ConnectTimings.Phase.values()) {
+                builder.append(phase).append(" [").append(mPhases[phase.ordinal()]).append("]\n");
+            }
+            return builder.append("TOTAL [").append(mTotal).append(']').toString();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.telecommande.core.remote;
+
+import java.util.Locale;
+
+/**
+ * Per-phase durations of one {@link RemoteSession} connect.
+ */
+public class ConnectTimings {
+
+    public enum Phase {
+        /**
+         * Getting the TLS context, which on a fresh install means waiting for the identity to be
+         * generated; near zero once {@code SslContextCache} holds it.
+         */
+        IDENTITY,
+        /**
+         * Resolving the TV's host name.
+         */
+        DNS,
+        /**
+         * TCP three-way handshake.
+         */
+        TCP_CONNECT,
+        /**
+         * TLS handshake, full or resumed.
+         */
+        TLS_HANDSHAKE,
+        /**
+         * Until the TV's first {@code RemoteConfigure} arrived.
+         */
+        FIRST_MESSAGE,
+        /**
+         * Sending our {@code RemoteConfigure} until the TV acknowledged it.
+         */
+        CONFIGURE_ACK,
+        /**
+         * Sending {@code RemoteSetActive}.
+         */
+        SET_ACTIVE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long[] mDurations = new long[PHASES.length];
+    private long mStartNanos;
+    private long mLastMarkNanos;
+    private long mTotalNanos;
+    private boolean isPipelined;
+
+    void start() {
+        mStartNanos = System.nanoTime();
+        mLastMarkNanos = mStartNanos;
+    }
+
+    /**
+     * Ends {@code phase}, which is taken to have started when the previous one ended.
+     */
+    void mark(Phase phase) {
+        mark(phase, System.nanoTime());
+    }
+
+    void mark(Phase phase, long atNanos) {
+        mDurations[phase.ordinal()] = atNanos - mLastMarkNanos;
+        mLastMarkNanos = atNanos;
+        mTotalNanos = atNanos - mStartNanos;
+    }
+
+    void setPipelined(boolean pipelined) {
+        isPipelined = pipelined;
+    }
+
+    /**
+     * Whether configure and set-active were sent before the TV's first message, in which case
+     * {@link Phase#SET_ACTIVE} is zero and the send is part of {@link Phase#FIRST_MESSAGE}.
+     */
+    public boolean isPipelined() {
+        return isPipelined;
+    }
+
+    public long getNanos(Phase phase) {
+        return mDurations[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(isPipelined ? "pipelined " : "");
+        for (Phase phase : PHASES) {
+            builder.append(phase.name().toLowerCase(Locale.US)).append('=')
+                    .append(String.format(Locale.US, "%.1f", mDurations[phase.ordinal()] / 1e6)).append("ms ");
+        }
+        return builder.append("total=").append(String.format(Locale.US, "%.1f", mTotalNanos / 1e6)).append("ms").toString();
+    }
+}
@@ -0,0 +1,227 @@
+package com.telecommande.core.remote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Types into the text field focused on the TV.
+ * <p>
+ * The TV announces a focused field with {@code RemoteImeShowRequest} and reports its content
+ * through {@code RemoteImeKeyInject} and {@code RemoteImeBatchEdit}; this class keeps the
+ * counters and last known value from those. A {@code RemoteImeBatchEdit} carries the whole field
+ * value, so {@link #setText(String)} calls within the debounce window collapse into one frame
+ * holding the latest text, and nothing is sent if it matches what the TV already shows.
+ */
+public class ImeSession {
+
+    public interface FrameSink {
+        CompletableFuture<Void> send(byte[] frame);
+    }
+
+    public interface Listener {
+        /**
+         * The TV focused a text field containing {@code value}.
+         */
+        void onFieldFocused(String value, String label);
+
+        /**
+         * The field's content changed on the TV, e.g. through its own on-screen keyboard.
+         */
+        void onFieldChanged(String value);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(ImeSession.class);
+    private final FrameSink mFrameSink;
+    private final ScheduledExecutorService mScheduler;
+    private final RemoteMessageManager mMessageManager = new RemoteMessageManager();
+    private final AtomicLong mFrameCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private final AtomicLong mUnchangedCount = new AtomicLong();
+    private volatile Listener mListener;
+
+    private long mDebounceMillis = 40;
+    private int mImeCounter;
+    private int mFieldCounter;
+    private String mFieldValue = "";
+    private String mAppPackage;
+    private boolean isFieldFocused = false;
+    private String mPendingText;
+    private CompletableFuture<Void> mPendingFlush;
+
+    public ImeSession(FrameSink frameSink, ScheduledExecutorService scheduler) {
+        mFrameSink = frameSink;
+        mScheduler = scheduler;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public synchronized void setDebounceMillis(long debounceMillis) {
+        mDebounceMillis = debounceMillis;
+    }
+
+    /**
+     * Makes the field read {@code text}. The future completes once the frame carrying this text,
+     * or a later one that replaced it, was written.
+     */
+    public synchronized CompletableFuture<Void> setText(String text) {
+        if (mPendingFlush != null) {
+            mPendingText = text;
+            mCoalescedCount.incrementAndGet();
+            return mPendingFlush;
+        }
+        mPendingText = text;
+        mPendingFlush = new CompletableFuture<>();
+        CompletableFuture<Void> flush = mPendingFlush;
+        mScheduler.schedule(this::flush, mDebounceMillis, TimeUnit.MILLISECONDS);
+        return flush;
+    }
+
+    public CompletableFuture<Void> append(String text) {
+        synchronized (this) {
+            return setText(getText() + text);
+        }
+    }
+
+    /**
+     * Deletes the last {@code count} characters.
+     */
+    public CompletableFuture<Void> delete(int count) {
+        synchronized (this) {
+            String text = getText();
+            return setText(text.substring(0, Math.max(0, text.length() - count)));
+        }
+    }
+
+    /**
+     * The text the field holds once pending edits are sent.
+     */
+    public synchronized String getText() {
+        return mPendingText != null ? mPendingText : mFieldValue;
+    }
+
+    public synchronized boolean isFieldFocused() {
+        return isFieldFocused;
+    }
+
+    /**
+     * Package of the app owning the focused field, if the TV reported it.
+     */
+    public synchronized String getAppPackage() {
+        return mAppPackage;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount.get();
+    }
+
+    /**
+     * {@link #setText} calls folded into a frame already pending.
+     */
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * Flushes skipped because the TV already showed the text.
+     */
+    public long getUnchangedCount() {
+        return mUnchangedCount.get();
+    }
+
+    void onShowRequest(Remotemessage.RemoteImeShowRequest showRequest) {
+        Remotemessage.RemoteTextFieldStatus status = showRequest.getRemoteTextFieldStatus();
+        synchronized (this) {
+            mFieldCounter = status.getCounterField();
+            mFieldValue = status.getValue();
+            isFieldFocused = true;
+        }
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onFieldFocused(status.getValue(), status.getLabel());
+        }
+    }
+
+    void onKeyInject(Remotemessage.RemoteImeKeyInject keyInject) {
+        synchronized (this) {
+            if (keyInject.hasAppInfo()) {
+                mAppPackage = keyInject.getAppInfo().getAppPackage();
+            }
+        }
+        if (keyInject.hasTextFieldStatus()) {
+            Remotemessage.RemoteTextFieldStatus status = keyInject.getTextFieldStatus();
+            synchronized (this) {
+                mFieldCounter = status.getCounterField();
+            }
+            fieldChanged(status.getValue());
+        }
+    }
+
+    void onBatchEdit(Remotemessage.RemoteImeBatchEdit batchEdit) {
+        synchronized (this) {
+            mImeCounter = batchEdit.getImeCounter();
+            mFieldCounter = batchEdit.getFieldCounter();
+        }
+        int edits = batchEdit.getEditInfoCount();
+        if (edits > 0 && batchEdit.getEditInfo(edits - 1).hasTextFieldStatus()) {
+            fieldChanged(batchEdit.getEditInfo(edits - 1).getTextFieldStatus().getValue());
+        }
+    }
+
+    private void fieldChanged(String value) {
+        synchronized (this) {
+            if (value.equals(mFieldValue)) {
+                return;
+            }
+            mFieldValue = value;
+        }
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onFieldChanged(value);
+        }
+    }
+
+    private void flush() {
+        String text;
+        byte[] frame;
+        CompletableFuture<Void> flush;
+        String previous;
+        synchronized (this) {
+            text = mPendingText;
+            flush = mPendingFlush;
+            mPendingText = null;
+            mPendingFlush = null;
+            if (text.equals(mFieldValue)) {
+                mUnchangedCount.incrementAndGet();
+                flush.complete(null);
+                return;
+            }
+            if (!isFieldFocused) {
+                logger.debug("Sending text before the TV announced a text field");
+            }
+            frame = mMessageManager.createImeBatchEdit(mImeCounter, mFieldCounter, text);
+            previous = mFieldValue;
+            mFieldValue = text;
+        }
+        mFrameCount.incrementAndGet();
+        mFrameSink.send(frame).whenComplete((ignored, error) -> {
+            if (error != null) {
+                synchronized (this) {
+                    // The TV never got the text; restore what it has so the next flush resends it.
+                    if (text.equals(mFieldValue)) {
+                        mFieldValue = previous;
+                    }
+                }
+                flush.completeExceptionally(error);
+            } else {
+                flush.complete(null);
+            }
+        });
+    }
+}
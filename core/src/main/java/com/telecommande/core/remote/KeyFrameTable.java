@@ -0,0 +1,42 @@
+package com.telecommande.core.remote;
+
+import com.telecommande.core.wire.FrameEncoder;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process-wide table of length-prefixed {@code RemoteKeyInject} frames, one per key code and
+ * direction, encoded on first use.
+ * <p>
+ * The returned arrays are shared and must not be modified; they are only ever handed to a socket
+ * write.
+ */
+final class KeyFrameTable {
+
+    private static final Remotemessage.RemoteKeyCode[] KEY_CODES = Remotemessage.RemoteKeyCode.values();
+    private static final Remotemessage.RemoteDirection[] DIRECTIONS = Remotemessage.RemoteDirection.values();
+    private static final AtomicReferenceArray<byte[]> FRAMES = new AtomicReferenceArray<>(KEY_CODES.length * DIRECTIONS.length);
+
+    private KeyFrameTable() {
+    }
+
+    static byte[] get(Remotemessage.RemoteKeyCode keyCode, Remotemessage.RemoteDirection direction) {
+        int index = keyCode.ordinal() * DIRECTIONS.length + direction.ordinal();
+        byte[] frame = FRAMES.get(index);
+        if (frame == null) {
+            // A racing thread may encode the same frame; both results are identical.
+            frame = encode(keyCode, direction);
+            FRAMES.lazySet(index, frame);
+        }
+        return frame;
+    }
+
+    static byte[] encode(Remotemessage.RemoteKeyCode keyCode, Remotemessage.RemoteDirection direction) {
+        return FrameEncoder.encode(Remotemessage.RemoteMessage.newBuilder()
+                .setRemoteKeyInject(Remotemessage.RemoteKeyInject.newBuilder()
+                        .setKeyCode(keyCode)
+                        .setDirection(direction)
+                        .build())
+                .build());
+    }
+}
@@ -0,0 +1,166 @@
+package com.telecommande.core.remote;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns press/release pairs from the UI into as few key frames as possible.
+ * <p>
+ * In {@link Mode#LONG_PRESS} a tap becomes one {@code SHORT} frame and a hold becomes a single
+ * {@code START_LONG} followed by {@code END_LONG} on release, letting the TV repeat on its own.
+ * TVs that ignore long presses can use {@link Mode#SHORT_BURST}, which repeats {@code SHORT}
+ * frames at a fixed rate while the key is held.
+ */
+public class KeyRepeatController {
+
+    public enum Mode {
+        LONG_PRESS,
+        SHORT_BURST
+    }
+
+    public interface CommandSink {
+        CompletableFuture<Void> send(Remotemessage.RemoteKeyCode keyCode, Remotemessage.RemoteDirection direction);
+    }
+
+    public interface Clock {
+        Clock SYSTEM = System::nanoTime;
+
+        long nanoTime();
+    }
+
+    private final CommandSink mSink;
+    private final ScheduledExecutorService mScheduler;
+    private final Clock mClock;
+    private final Map<Remotemessage.RemoteKeyCode, HeldKey> mHeldKeys = new EnumMap<>(Remotemessage.RemoteKeyCode.class);
+    private final AtomicLong mFramesSent = new AtomicLong();
+    private volatile Mode mMode = Mode.LONG_PRESS;
+    private volatile long mLongPressDelayMillis = 400;
+    private volatile long mRepeatIntervalMillis = 150;
+
+    public KeyRepeatController(CommandSink sink, ScheduledExecutorService scheduler) {
+        this(sink, scheduler, Clock.SYSTEM);
+    }
+
+    /**
+     * @param clock decides when a long press or repeat is due; {@code scheduler} only wakes the
+     *              controller up
+     */
+    public KeyRepeatController(CommandSink sink, ScheduledExecutorService scheduler, Clock clock) {
+        mSink = sink;
+        mScheduler = scheduler;
+        mClock = clock;
+    }
+
+    public void setMode(Mode mode) {
+        mMode = mode;
+    }
+
+    /**
+     * How long a key must be held before it is sent as a long press; shorter holds are sent as
+     * a single {@code SHORT} on release.
+     */
+    public void setLongPressDelayMillis(long longPressDelayMillis) {
+        mLongPressDelayMillis = longPressDelayMillis;
+    }
+
+    /**
+     * Minimum spacing between {@code SHORT} frames in {@link Mode#SHORT_BURST}.
+     */
+    public void setRepeatIntervalMillis(long repeatIntervalMillis) {
+        mRepeatIntervalMillis = repeatIntervalMillis;
+    }
+
+    public long getFramesSent() {
+        return mFramesSent.get();
+    }
+
+    public synchronized void press(Remotemessage.RemoteKeyCode keyCode) {
+        if (mHeldKeys.containsKey(keyCode)) {
+            return;
+        }
+        HeldKey heldKey = new HeldKey(keyCode, mMode);
+        mHeldKeys.put(keyCode, heldKey);
+        if (heldKey.mMode == Mode.LONG_PRESS) {
+            heldKey.mDueNanos = mClock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mLongPressDelayMillis);
+        } else {
+            send(heldKey, Remotemessage.RemoteDirection.SHORT);
+            heldKey.mDueNanos = heldKey.mLastSentNanos + TimeUnit.MILLISECONDS.toNanos(mRepeatIntervalMillis);
+        }
+        schedule(heldKey);
+    }
+
+    public synchronized void release(Remotemessage.RemoteKeyCode keyCode) {
+        HeldKey heldKey = mHeldKeys.remove(keyCode);
+        if (heldKey == null) {
+            return;
+        }
+        if (heldKey.mTask != null) {
+            heldKey.mTask.cancel(false);
+        }
+        if (heldKey.mMode == Mode.LONG_PRESS) {
+            send(heldKey, heldKey.isLongPressStarted ? Remotemessage.RemoteDirection.END_LONG : Remotemessage.RemoteDirection.SHORT);
+        }
+    }
+
+    /**
+     * Releases every held key, e.g. when the window loses focus or the session drops.
+     */
+    public synchronized void releaseAll() {
+        for (Remotemessage.RemoteKeyCode keyCode : mHeldKeys.keySet().toArray(new Remotemessage.RemoteKeyCode[0])) {
+            release(keyCode);
+        }
+    }
+
+    /**
+     * Wakes up when {@code heldKey} is due according to {@link #mClock}. The scheduler only
+     * provides the wake-up; a task that fires early is re-armed for the remainder.
+     */
+    private void schedule(HeldKey heldKey) {
+        long delayNanos = Math.max(0, heldKey.mDueNanos - mClock.nanoTime());
+        heldKey.mTask = mScheduler.schedule(() -> onDue(heldKey), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void onDue(HeldKey heldKey) {
+        if (mHeldKeys.get(heldKey.mKeyCode) != heldKey) {
+            return;
+        }
+        if (mClock.nanoTime() - heldKey.mDueNanos < 0) {
+            schedule(heldKey);
+            return;
+        }
+        if (heldKey.mMode == Mode.LONG_PRESS) {
+            heldKey.isLongPressStarted = true;
+            send(heldKey, Remotemessage.RemoteDirection.START_LONG);
+            return;
+        }
+        // Re-armed from the send time rather than the old deadline, so a stall never turns into a burst.
+        send(heldKey, Remotemessage.RemoteDirection.SHORT);
+        heldKey.mDueNanos = heldKey.mLastSentNanos + TimeUnit.MILLISECONDS.toNanos(mRepeatIntervalMillis);
+        schedule(heldKey);
+    }
+
+    private void send(HeldKey heldKey, Remotemessage.RemoteDirection direction) {
+        heldKey.mLastSentNanos = mClock.nanoTime();
+        mFramesSent.incrementAndGet();
+        mSink.send(heldKey.mKeyCode, direction);
+    }
+
+    private static final class HeldKey {
+        private final Remotemessage.RemoteKeyCode mKeyCode;
+        private final Mode mMode;
+        private ScheduledFuture<?> mTask;
+        private long mDueNanos;
+        private long mLastSentNanos;
+        private boolean isLongPressStarted;
+
+        HeldKey(Remotemessage.RemoteKeyCode keyCode, Mode mode) {
+            mKeyCode = keyCode;
+            mMode = mode;
+        }
+    }
+}
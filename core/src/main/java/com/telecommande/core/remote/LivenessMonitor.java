@@ -0,0 +1,98 @@
+package com.telecommande.core.remote;
+
+import com.telecommande.core.metrics.LatencyHistogram;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the TV's {@code RemotePingRequest} heartbeat on an established remote session.
+ * <p>
+ * The TV pings every few seconds; once no ping has arrived for {@code maxMissedPings} intervals
+ * the session is declared stale and the listener is told once, so it can reconnect before the
+ * user's next key press hits a dead socket.
+ */
+public class LivenessMonitor {
+
+    public interface Listener {
+        void onStale(long silenceMillis);
+    }
+
+    private final ScheduledExecutorService mScheduler;
+    private final long mPingIntervalNanos;
+    private final int mMaxMissedPings;
+    private final Listener mListener;
+    private final LatencyHistogram mPingGap = new LatencyHistogram();
+    private final LatencyHistogram mResponseWriteLatency = new LatencyHistogram();
+    private final AtomicLong mPingCount = new AtomicLong();
+    private volatile long mLastPingNanos;
+    private volatile boolean isStale = false;
+    private ScheduledFuture<?> mCheckTask;
+
+    public LivenessMonitor(ScheduledExecutorService scheduler, long pingIntervalMillis, int maxMissedPings, Listener listener) {
+        mScheduler = scheduler;
+        mPingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis);
+        mMaxMissedPings = maxMissedPings;
+        mListener = listener;
+    }
+
+    public synchronized void start() {
+        if (mCheckTask != null) {
+            return;
+        }
+        mLastPingNanos = System.nanoTime();
+        mCheckTask = mScheduler.scheduleWithFixedDelay(this::check, mPingIntervalNanos, mPingIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (mCheckTask != null) {
+            mCheckTask.cancel(false);
+            mCheckTask = null;
+        }
+    }
+
+    /**
+     * Called by the parser for every {@code RemotePingRequest}.
+     */
+    public void onPingReceived() {
+        long now = System.nanoTime();
+        if (mPingCount.getAndIncrement() > 0) {
+            mPingGap.record(now - mLastPingNanos);
+        }
+        mLastPingNanos = now;
+    }
+
+    /**
+     * Called by the parser once the matching {@code RemotePingResponse} was written.
+     */
+    public void onPingResponseWritten(long writeNanos) {
+        mResponseWriteLatency.record(writeNanos);
+    }
+
+    public LatencyHistogram getPingGap() {
+        return mPingGap;
+    }
+
+    public LatencyHistogram getResponseWriteLatency() {
+        return mResponseWriteLatency;
+    }
+
+    public long getPingCount() {
+        return mPingCount.get();
+    }
+
+    public boolean isStale() {
+        return isStale;
+    }
+
+    private void check() {
+        long silence = System.nanoTime() - mLastPingNanos;
+        if (!isStale && silence > mPingIntervalNanos * mMaxMissedPings) {
+            isStale = true;
+            stop();
+            mListener.onStale(TimeUnit.NANOSECONDS.toMillis(silence));
+        }
+    }
+}
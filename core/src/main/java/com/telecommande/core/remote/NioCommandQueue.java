@@ -0,0 +1,112 @@
+package com.telecommande.core.remote;
+
+import com.telecommande.core.wire.NioConnection;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The {@link CommandWriter} bound for a {@link NioConnection}, whose own write queue is
+ * unbounded. No thread is needed since the selector thread already batches writes; a command
+ * counts against the capacity until it has been handed to the socket, so a TV that stops reading
+ * fills this queue and the {@link CommandWriter.OverflowPolicy} applies, as on a blocking socket.
+ */
+class NioCommandQueue {
+
+    private final NioConnection mConnection;
+    private final int mCapacity;
+    private final CommandWriter.OverflowPolicy mOverflowPolicy;
+    private final Deque<Command> mInFlight = new ArrayDeque<>();
+    private boolean isClosed = false;
+
+    NioCommandQueue(NioConnection connection, int capacity, CommandWriter.OverflowPolicy overflowPolicy) {
+        mConnection = connection;
+        mCapacity = capacity;
+        mOverflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Same contract as {@link CommandWriter#submit(byte[], boolean)}.
+     */
+    CompletableFuture<Void> submit(byte[] frame, boolean isIdempotent) {
+        Command command;
+        synchronized (this) {
+            while (!isClosed && mInFlight.size() >= mCapacity) {
+                switch (mOverflowPolicy) {
+                    case BLOCK:
+                        if (mConnection.isSelectorThread()) {
+                            // Waiting would stall the very thread that drains the queue.
+                            return failed(new RejectedExecutionException("Send queue full"));
+                        }
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return failed(e);
+                        }
+                        continue;
+                    case COALESCE:
+                        if (isIdempotent) {
+                            for (Command queued : mInFlight) {
+                                if (queued.isIdempotent && (queued.mFrame == frame || Arrays.equals(queued.mFrame, frame))) {
+                                    return queued.mFuture;
+                                }
+                            }
+                        }
+                        return failed(new RejectedExecutionException("Send queue full"));
+                    case DROP:
+                    default:
+                        return failed(new RejectedExecutionException("Send queue full"));
+                }
+            }
+            if (isClosed) {
+                return failed(new IOException("Connection closed"));
+            }
+            command = new Command(frame, isIdempotent);
+            mInFlight.add(command);
+        }
+        mConnection.send(frame).whenComplete((ignored, error) -> {
+            // Free the slot first so a caller chaining on the future can submit again right away.
+            synchronized (this) {
+                mInFlight.remove(command);
+                notifyAll();
+            }
+            if (error != null) {
+                command.mFuture.completeExceptionally(error);
+            } else {
+                command.mFuture.complete(null);
+            }
+        });
+        return command.mFuture;
+    }
+
+    /**
+     * Fails new and blocked submissions; commands already handed to the connection fail when it
+     * closes.
+     */
+    synchronized void close() {
+        isClosed = true;
+        notifyAll();
+    }
+
+    private static CompletableFuture<Void> failed(Throwable cause) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    private static final class Command {
+        private final byte[] mFrame;
+        private final boolean isIdempotent;
+        private final CompletableFuture<Void> mFuture = new CompletableFuture<>();
+
+        Command(byte[] frame, boolean idempotent) {
+            mFrame = frame;
+            isIdempotent = idempotent;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.telecommande.core.remote;
+
+import com.telecommande.core.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Brings a remote session back after it dropped or the TV went to standby.
+ * <p>
+ * Each attempt first probes the port with a plain TCP connect, which is cheap enough to repeat
+ * at least once a second, and only runs the TLS connect once the TV accepts, so a TV waking from
+ * standby is picked up within a second of its port opening. Delays grow exponentially, capped
+ * lower while the port is closed than after a failed connect, with jitter so a room of remotes
+ * does not reconnect in lockstep. Network hints pause the engine without spending its attempt
+ * budget, and resume it with a fresh backoff.
+ * <p>
+ * The scheduler only times attempts; the probe and the connect block, so they run on a separate
+ * executor and never hold up other timers sharing the scheduler.
+ */
+public class ReconnectEngine {
+
+    public enum State {
+        IDLE,
+        WAITING,
+        WAITING_FOR_NETWORK,
+        CONNECTING,
+        CONNECTED,
+        GAVE_UP
+    }
+
+    public interface Connector {
+        /**
+         * Performs one full connect, throwing if the session did not come up.
+         */
+        void connect() throws Exception;
+
+        /**
+         * Closes a connection that {@link #connect()} brought up after the engine was cancelled.
+         */
+        void disconnect();
+    }
+
+    public interface Listener {
+        void onStateChanged(State state);
+
+        void onReconnected(int attempts, long durationNanos);
+
+        /**
+         * @param lastError failure of the last connect, or {@code null} if the port never opened
+         */
+        void onGaveUp(int attempts, Throwable lastError);
+    }
+
+    private static final Executor CONNECT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ReconnectConnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Logger logger = LoggerFactory.getLogger(ReconnectEngine.class);
+    private final String mHost;
+    private final int mPort;
+    private final Connector mConnector;
+    private final Listener mListener;
+    private final ScheduledExecutorService mScheduler;
+    private final Executor mConnectExecutor;
+    private final Random mRandom;
+    private final LatencyHistogram mReconnectDurations = new LatencyHistogram();
+    private final AtomicLong mAttemptCount = new AtomicLong();
+    private final AtomicLong mGiveUpCount = new AtomicLong();
+
+    private long mInitialDelayMillis = 200;
+    private long mMaxProbeDelayMillis = 1000;
+    private long mMaxDelayMillis = 5000;
+    private int mMaxAttempts = 150;
+    private int mProbeTimeoutMillis = 500;
+
+    private State mState = State.IDLE;
+    private ScheduledFuture<?> mPendingAttempt;
+    private int mAttempts;
+    private long mNextProbeDelayMillis;
+    private long mNextDelayMillis;
+    private long mStartNanos;
+    private Throwable mLastError;
+
+    public ReconnectEngine(String host, int port, Connector connector, Listener listener, ScheduledExecutorService scheduler) {
+        this(host, port, connector, listener, scheduler, CONNECT_EXECUTOR, new Random());
+    }
+
+    /**
+     * @param scheduler       times the attempts
+     * @param connectExecutor runs the blocking probe and connect
+     */
+    public ReconnectEngine(String host, int port, Connector connector, Listener listener, ScheduledExecutorService scheduler,
+                           Executor connectExecutor, Random random) {
+        mHost = host;
+        mPort = port;
+        mConnector = connector;
+        mListener = listener;
+        mScheduler = scheduler;
+        mConnectExecutor = connectExecutor;
+        mRandom = random;
+    }
+
+    /**
+     * @param maxProbeDelayMillis cap while the port is closed
+     * @param maxDelayMillis      cap after the port opened but the connect failed
+     */
+    public synchronized void setBackoff(long initialDelayMillis, long maxProbeDelayMillis, long maxDelayMillis) {
+        mInitialDelayMillis = initialDelayMillis;
+        mMaxProbeDelayMillis = maxProbeDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+    }
+
+    public synchronized void setMaxAttempts(int maxAttempts) {
+        mMaxAttempts = maxAttempts;
+    }
+
+    public synchronized void setProbeTimeoutMillis(int probeTimeoutMillis) {
+        mProbeTimeoutMillis = probeTimeoutMillis;
+    }
+
+    /**
+     * Starts reconnecting immediately unless a reconnect is already in progress.
+     */
+    public synchronized void start() {
+        if (mState == State.WAITING || mState == State.CONNECTING || mState == State.WAITING_FOR_NETWORK) {
+            return;
+        }
+        mAttempts = 0;
+        mLastError = null;
+        mStartNanos = System.nanoTime();
+        resetBackoff();
+        schedule(0);
+    }
+
+    public synchronized void cancel() {
+        cancelPending();
+        setState(State.IDLE);
+    }
+
+    /**
+     * Hint that connectivity is back (e.g. Wi-Fi reconnected): retry now with a fresh backoff.
+     */
+    public synchronized void onNetworkAvailable() {
+        if (mState == State.WAITING || mState == State.WAITING_FOR_NETWORK) {
+            cancelPending();
+            resetBackoff();
+            schedule(0);
+        }
+    }
+
+    /**
+     * Hint that there is no usable network: stop attempting until {@link #onNetworkAvailable()}.
+     */
+    public synchronized void onNetworkLost() {
+        if (mState == State.WAITING) {
+            cancelPending();
+            setState(State.WAITING_FOR_NETWORK);
+        }
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * Time from {@link #start()} until the session was back, for successful reconnects.
+     */
+    public LatencyHistogram getReconnectDurations() {
+        return mReconnectDurations;
+    }
+
+    public long getAttemptCount() {
+        return mAttemptCount.get();
+    }
+
+    public long getGiveUpCount() {
+        return mGiveUpCount.get();
+    }
+
+    private void schedule(long delayMillis) {
+        setState(State.WAITING);
+        mPendingAttempt = mScheduler.schedule(() -> mConnectExecutor.execute(this::attempt), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt() {
+        synchronized (this) {
+            if (mState != State.WAITING) {
+                return;
+            }
+            mAttempts++;
+            mAttemptCount.incrementAndGet();
+            setState(State.CONNECTING);
+        }
+        boolean connected = false;
+        Throwable error = null;
+        boolean portOpen = isPortOpen(mHost, mPort, mProbeTimeoutMillis);
+        if (portOpen) {
+            try {
+                mConnector.connect();
+                connected = true;
+            } catch (Exception e) {
+                error = e;
+                logger.debug("Reconnect attempt to {}:{} failed: {}", mHost, mPort, e.getMessage());
+            }
+        }
+        if (!finishAttempt(connected, portOpen, error) && connected) {
+            // Cancelled while connecting; do not leave the new connection behind.
+            mConnector.disconnect();
+        }
+    }
+
+    /**
+     * @return {@code false} if the engine was cancelled during the attempt
+     */
+    private synchronized boolean finishAttempt(boolean connected, boolean portOpen, Throwable error) {
+        if (mState != State.CONNECTING) {
+            return false;
+        }
+        if (connected) {
+            long duration = System.nanoTime() - mStartNanos;
+            mReconnectDurations.record(duration);
+            setState(State.CONNECTED);
+            mListener.onReconnected(mAttempts, duration);
+            return true;
+        }
+        if (error != null) {
+            mLastError = error;
+        }
+        // A rejected handshake means the pairing is gone; retrying cannot fix it.
+        if (error instanceof SSLException || mAttempts >= mMaxAttempts) {
+            mGiveUpCount.incrementAndGet();
+            setState(State.GAVE_UP);
+            mListener.onGaveUp(mAttempts, mLastError);
+            return true;
+        }
+        long delay;
+        if (portOpen) {
+            delay = jitter(mNextDelayMillis);
+            mNextDelayMillis = Math.min(mNextDelayMillis * 2, mMaxDelayMillis);
+        } else {
+            delay = jitter(mNextProbeDelayMillis);
+            mNextProbeDelayMillis = Math.min(mNextProbeDelayMillis * 2, mMaxProbeDelayMillis);
+        }
+        schedule(delay);
+        return true;
+    }
+
+    private void resetBackoff() {
+        mNextProbeDelayMillis = mInitialDelayMillis;
+        mNextDelayMillis = mInitialDelayMillis;
+    }
+
+    /**
+     * Picks uniformly from {@code [delay / 2, delay]}.
+     */
+    private long jitter(long delayMillis) {
+        return delayMillis / 2 + (long) (mRandom.nextDouble() * (delayMillis / 2 + 1));
+    }
+
+    private void cancelPending() {
+        if (mPendingAttempt != null) {
+            mPendingAttempt.cancel(false);
+            mPendingAttempt = null;
+        }
+    }
+
+    private void setState(State state) {
+        if (mState != state) {
+            mState = state;
+            mListener.onStateChanged(state);
+        }
+    }
+
+    public static boolean isPortOpen(String host, int port, int timeoutMillis) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Blocks until {@code host:port} accepts TCP connections or {@code timeoutMillis} elapsed,
+     * probing with the same capped backoff as reconnects. Used after Wake-on-LAN instead of a
+     * fixed sleep.
+     *
+     * @return whether the port opened in time
+     */
+    public static boolean awaitPortOpen(String host, int port, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long delay = 100;
+        while (true) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            if (isPortOpen(host, port, (int) Math.min(500, remainingMillis))) {
+                return true;
+            }
+            Thread.sleep(Math.min(delay, Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))));
+            delay = Math.min(delay * 2, 1000);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.telecommande.core.remote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Routes inbound {@link Remotemessage.RemoteMessage}s to handlers registered per payload type.
+ * <p>
+ * Events are queued in a bounded buffer and delivered in order on the configured executor, never
+ * on the socket reader or selector thread. Messages nobody listens for are counted and discarded
+ * straight away, so a long-lived session cannot accumulate them.
+ */
+public class RemoteEventDispatcher {
+
+    public enum EventType {
+        CONFIGURE(Remotemessage.RemoteMessage::hasRemoteConfigure, Remotemessage.RemoteMessage::getRemoteConfigure),
+        SET_ACTIVE(Remotemessage.RemoteMessage::hasRemoteSetActive, Remotemessage.RemoteMessage::getRemoteSetActive),
+        ERROR(Remotemessage.RemoteMessage::hasRemoteError, Remotemessage.RemoteMessage::getRemoteError),
+        IME_KEY_INJECT(Remotemessage.RemoteMessage::hasRemoteImeKeyInject, Remotemessage.RemoteMessage::getRemoteImeKeyInject),
+        IME_BATCH_EDIT(Remotemessage.RemoteMessage::hasRemoteImeBatchEdit, Remotemessage.RemoteMessage::getRemoteImeBatchEdit),
+        IME_SHOW_REQUEST(Remotemessage.RemoteMessage::hasRemoteImeShowRequest, Remotemessage.RemoteMessage::getRemoteImeShowRequest),
+        VOICE_BEGIN(Remotemessage.RemoteMessage::hasRemoteVoiceBegin, Remotemessage.RemoteMessage::getRemoteVoiceBegin),
+        VOICE_PAYLOAD(Remotemessage.RemoteMessage::hasRemoteVoicePayload, Remotemessage.RemoteMessage::getRemoteVoicePayload),
+        VOICE_END(Remotemessage.RemoteMessage::hasRemoteVoiceEnd, Remotemessage.RemoteMessage::getRemoteVoiceEnd),
+        SET_VOLUME_LEVEL(Remotemessage.RemoteMessage::hasRemoteSetVolumeLevel, Remotemessage.RemoteMessage::getRemoteSetVolumeLevel),
+        ADJUST_VOLUME_LEVEL(Remotemessage.RemoteMessage::hasRemoteAdjustVolumeLevel, Remotemessage.RemoteMessage::getRemoteAdjustVolumeLevel),
+        SET_PREFERRED_AUDIO_DEVICE(Remotemessage.RemoteMessage::hasRemoteSetPreferredAudioDevice, Remotemessage.RemoteMessage::getRemoteSetPreferredAudioDevice),
+        RESET_PREFERRED_AUDIO_DEVICE(Remotemessage.RemoteMessage::hasRemoteResetPreferredAudioDevice, Remotemessage.RemoteMessage::getRemoteResetPreferredAudioDevice),
+        APP_LINK_LAUNCH_REQUEST(Remotemessage.RemoteMessage::hasRemoteAppLinkLaunchRequest, Remotemessage.RemoteMessage::getRemoteAppLinkLaunchRequest),
+        /**
+         * Anything else; handlers receive the whole {@code RemoteMessage}.
+         */
+        OTHER(message -> true, message -> message);
+
+        private final Predicate<Remotemessage.RemoteMessage> mMatcher;
+        private final Function<Remotemessage.RemoteMessage, Object> mPayload;
+
+        EventType(Predicate<Remotemessage.RemoteMessage> matcher, Function<Remotemessage.RemoteMessage, Object> payload) {
+            mMatcher = matcher;
+            mPayload = payload;
+        }
+
+        public static EventType of(Remotemessage.RemoteMessage message) {
+            for (EventType type : VALUES) {
+                if (type.mMatcher.test(message)) {
+                    return type;
+                }
+            }
+            return OTHER;
+        }
+
+        private static final EventType[] VALUES = values();
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * Discard the incoming event.
+         */
+        DROP_NEWEST,
+        /**
+         * Discard the oldest queued event to make room; suits state updates such as volume.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * @param <T> payload type of the event, e.g. {@code RemoteSetVolumeLevel} for
+     *            {@link EventType#SET_VOLUME_LEVEL}
+     */
+    public interface Handler<T> {
+        void onEvent(T payload);
+    }
+
+    private static final Executor DEFAULT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RemoteEvents");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Logger logger = LoggerFactory.getLogger(RemoteEventDispatcher.class);
+    private final Map<EventType, List<Handler<Object>>> mHandlers = new ConcurrentHashMap<>();
+    private final BlockingQueue<Event> mQueue;
+    private final OverflowPolicy mOverflowPolicy;
+    private final Executor mExecutor;
+    private final AtomicBoolean isDraining = new AtomicBoolean();
+    private final AtomicLongArray mReceived = new AtomicLongArray(EventType.VALUES.length);
+    private final AtomicLongArray mDelivered = new AtomicLongArray(EventType.VALUES.length);
+    private final AtomicLongArray mDropped = new AtomicLongArray(EventType.VALUES.length);
+    private final AtomicLongArray mUnhandled = new AtomicLongArray(EventType.VALUES.length);
+
+    public RemoteEventDispatcher(int capacity, OverflowPolicy overflowPolicy) {
+        this(capacity, overflowPolicy, DEFAULT_EXECUTOR);
+    }
+
+    public RemoteEventDispatcher(int capacity, OverflowPolicy overflowPolicy, Executor executor) {
+        mQueue = new ArrayBlockingQueue<>(capacity);
+        mOverflowPolicy = overflowPolicy;
+        mExecutor = executor;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void register(EventType type, Handler<T> handler) {
+        mHandlers.computeIfAbsent(type, k -> new CopyOnWriteArrayList<>()).add((Handler<Object>) handler);
+    }
+
+    public void unregister(EventType type, Handler<?> handler) {
+        List<Handler<Object>> handlers = mHandlers.get(type);
+        if (handlers != null) {
+            handlers.remove(handler);
+        }
+    }
+
+    /**
+     * Queues {@code message} for its handlers. Called on the transport thread; never blocks.
+     */
+    public void publish(Remotemessage.RemoteMessage message) {
+        EventType type = EventType.of(message);
+        int index = type.ordinal();
+        mReceived.incrementAndGet(index);
+        List<Handler<Object>> handlers = mHandlers.get(type);
+        if (handlers == null || handlers.isEmpty()) {
+            mUnhandled.incrementAndGet(index);
+            return;
+        }
+        Event event = new Event(type, type.mPayload.apply(message));
+        while (!mQueue.offer(event)) {
+            if (mOverflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                mDropped.incrementAndGet(index);
+                return;
+            }
+            Event oldest = mQueue.poll();
+            if (oldest != null) {
+                mDropped.incrementAndGet(oldest.mType.ordinal());
+            }
+        }
+        if (isDraining.compareAndSet(false, true)) {
+            mExecutor.execute(this::drain);
+        }
+    }
+
+    public long getReceivedCount(EventType type) {
+        return mReceived.get(type.ordinal());
+    }
+
+    public long getDeliveredCount(EventType type) {
+        return mDelivered.get(type.ordinal());
+    }
+
+    public long getDroppedCount(EventType type) {
+        return mDropped.get(type.ordinal());
+    }
+
+    /**
+     * Messages of {@code type} discarded because no handler was registered.
+     */
+    public long getUnhandledCount(EventType type) {
+        return mUnhandled.get(type.ordinal());
+    }
+
+    public int getQueuedCount() {
+        return mQueue.size();
+    }
+
+    private void drain() {
+        while (true) {
+            Event event;
+            while ((event = mQueue.poll()) != null) {
+                deliver(event);
+            }
+            isDraining.set(false);
+            // An event published after the last poll but before the flag was cleared would
+            // otherwise wait for the next publish.
+            if (mQueue.isEmpty() || !isDraining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void deliver(Event event) {
+        List<Handler<Object>> handlers = mHandlers.get(event.mType);
+        if (handlers == null) {
+            return;
+        }
+        for (Handler<Object> handler : handlers) {
+            try {
+                handler.onEvent(event.mPayload);
+            } catch (RuntimeException e) {
+                logger.error("Handler for {} failed: {}", event.mType, e.getMessage(), e);
+            }
+        }
+        mDelivered.incrementAndGet(event.mType.ordinal());
+    }
+
+    private static final class Event {
+        private final EventType mType;
+        private final Object mPayload;
+
+        Event(EventType type, Object payload) {
+            mType = type;
+            mPayload = payload;
+        }
+    }
+}
@@ -7,8 +7,6 @@ public interface RemoteListener {
 
     void onDisconnected();
 
-    void onVolume();
-
     void onPerformInputDeviceRole() throws PairingException;
 
     void onPerformOutputDeviceRole(byte[] gamma)
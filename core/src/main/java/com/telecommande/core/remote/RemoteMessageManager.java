@@ -1,6 +1,8 @@
 package com.telecommande.core.remote;
 
 import com.telecommande.core.wire.MessageManager;
+import com.telecommande.core.wire.WireTracer;
+import com.telecommande.core.wire.WireTracing;
 
 public class RemoteMessageManager extends MessageManager {
 
@@ -25,8 +27,7 @@ public class RemoteMessageManager extends MessageManager {
         Remotemessage.RemoteMessage remoteMessage = Remotemessage.RemoteMessage.newBuilder()
                 .setRemoteConfigure(remoteConfigure)
                 .build();
-        byte[] pairingMessageByteArray = remoteMessage.toByteArray();
-        return addLengthAndCreate(pairingMessageByteArray);
+        return createFrame(remoteMessage);
     }
 
     public byte[] createRemoteActive(int code) {
@@ -34,50 +35,137 @@ public class RemoteMessageManager extends MessageManager {
         Remotemessage.RemoteMessage remoteMessage = Remotemessage.RemoteMessage.newBuilder()
                 .setRemoteSetActive(Remotemessage.RemoteSetActive.newBuilder().setActive(code).build())
                 .build();
-        byte[] pairingMessageByteArray = remoteMessage.toByteArray();
-        return addLengthAndCreate(pairingMessageByteArray);
+        return createFrame(remoteMessage);
     }
 
 
     public byte[] createPingResponse(int val1) {
         Remotemessage.RemotePingResponse remotePingResponse = Remotemessage.RemotePingResponse.newBuilder().setVal1(val1).build();
         Remotemessage.RemoteMessage remoteMessage = Remotemessage.RemoteMessage.newBuilder().setRemotePingResponse(remotePingResponse).build();
-        byte[] pairingMessageByteArray = remoteMessage.toByteArray();
-        return addLengthAndCreate(pairingMessageByteArray);
+        return createFrame(remoteMessage);
+    }
+
+    /**
+     * Longest frame {@link #writePingResponse} can produce: a one-byte length prefix, the
+     * {@code remote_ping_response} tag and length, and a ten-byte negative {@code val1}.
+     */
+    static final int MAX_PING_RESPONSE_FRAME = 1 + 2 + 1 + 10;
+
+    /**
+     * Encodes the same frame as {@link #createPingResponse(int)} into {@code dest} without
+     * allocating and returns its length.
+     */
+    public int writePingResponse(int val1, byte[] dest) {
+        // proto3 leaves a zero val1 out entirely.
+        int innerSize = val1 == 0 ? 0 : 1 + varintSize(val1);
+        int outerSize = 2 + innerSize;
+        int position = 0;
+        dest[position++] = (byte) outerSize;
+        dest[position++] = (byte) ((Remotemessage.RemoteMessage.REMOTE_PING_RESPONSE_FIELD_NUMBER << 3) | 2);
+        dest[position++] = (byte) innerSize;
+        if (val1 != 0) {
+            dest[position++] = (byte) (Remotemessage.RemotePingResponse.VAL1_FIELD_NUMBER << 3);
+            position = writeVarint(val1, dest, position);
+        }
+        if (WireTracing.isEnabled()) {
+            WireTracing.trace(WireTracer.Direction.OUTBOUND, dest, 1, position - 1);
+        }
+        return position;
+    }
+
+    /**
+     * Encoded size of an int32 varint; negative values are sign-extended to ten bytes.
+     */
+    private static int varintSize(int value) {
+        if (value < 0) {
+            return 10;
+        }
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(int value, byte[] dest, int position) {
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0) {
+            dest[position++] = (byte) ((remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        dest[position++] = (byte) remaining;
+        return position;
     }
 
     public byte[] createPower() {
-        Remotemessage.RemoteKeyInject remoteKeyInject = Remotemessage.RemoteKeyInject.newBuilder().setDirection(Remotemessage.RemoteDirection.SHORT).setKeyCode(Remotemessage.RemoteKeyCode.KEYCODE_POWER).build();
-        Remotemessage.RemoteMessage remoteMessage = Remotemessage.RemoteMessage.newBuilder().setRemoteKeyInject(remoteKeyInject).build();
-        byte[] pairingMessageByteArray = remoteMessage.toByteArray();
-        int length = pairingMessageByteArray.length;
-        mPacketBuffer.put((byte) length).put(pairingMessageByteArray);
-        byte[] bArr = new byte[mPacketBuffer.position()];
-        System.arraycopy(mPacketBuffer.array(), mPacketBuffer.arrayOffset(), bArr, 0, mPacketBuffer.position());
-        mPacketBuffer.clear();
-        return bArr;
+        return createKeyCommand(Remotemessage.RemoteKeyCode.KEYCODE_POWER, Remotemessage.RemoteDirection.SHORT);
     }
 
+    /**
+     * @deprecated {@code RemoteAdjustVolumeLevel} has no fields, so {@code volume} never reached
+     * the TV. Use {@link VolumeController#setVolume(int)}, which steps to the level with
+     * {@link #createKeyBurst}.
+     */
+    @Deprecated
     public byte[] createVolumeLevel(int volume) {
         Remotemessage.RemoteMessage remoteMessage = Remotemessage.RemoteMessage.newBuilder().setRemoteAdjustVolumeLevel(Remotemessage.RemoteAdjustVolumeLevel.newBuilder().build()).build();
-        byte[] pairingMessageByteArray = remoteMessage.toByteArray();
-        int length = pairingMessageByteArray.length;
-        mPacketBuffer.put((byte) length).put(pairingMessageByteArray);
-        byte[] bArr = new byte[mPacketBuffer.position()];
-        System.arraycopy(mPacketBuffer.array(), mPacketBuffer.arrayOffset(), bArr, 0, mPacketBuffer.position());
-        mPacketBuffer.clear();
-        return bArr;
+        return createFrame(remoteMessage);
     }
 
-    public byte[] createKeyCommand(Remotemessage.RemoteKeyCode keyCode, Remotemessage.RemoteDirection remoteDirection) {
-        Remotemessage.RemoteMessage remoteMessage = Remotemessage.RemoteMessage.newBuilder()
-                .setRemoteKeyInject(Remotemessage.RemoteKeyInject.newBuilder()
-                        .setKeyCode(keyCode)
-                        .setDirection(remoteDirection)
+    /**
+     * Replaces the focused text field's content with {@code value}, cursor after the last
+     * character. The counters must be the ones the TV last reported for the field.
+     */
+    public byte[] createImeBatchEdit(int imeCounter, int fieldCounter, String value) {
+        // The TV places the cursor at the index of the last character, not after it.
+        int cursor = value.length() - 1;
+        Remotemessage.RemoteImeBatchEdit batchEdit = Remotemessage.RemoteImeBatchEdit.newBuilder()
+                .setImeCounter(imeCounter)
+                .setFieldCounter(fieldCounter)
+                .addEditInfo(Remotemessage.RemoteEditInfo.newBuilder()
+                        .setInsert(1)
+                        .setTextFieldStatus(Remotemessage.RemoteImeObject.newBuilder()
+                                .setStart(cursor)
+                                .setEnd(cursor)
+                                .setValue(value)
+                                .build())
                         .build())
                 .build();
+        Remotemessage.RemoteMessage remoteMessage = Remotemessage.RemoteMessage.newBuilder()
+                .setRemoteImeBatchEdit(batchEdit)
+                .build();
+        return createFrame(remoteMessage);
+    }
 
-        return addLengthAndCreate(remoteMessage.toByteArray());
+    /**
+     * Encodes {@code count} short presses of {@code keyCode} back to back, to be written at once.
+     */
+    public byte[] createKeyBurst(Remotemessage.RemoteKeyCode keyCode, int count) {
+        byte[] frame = createKeyCommand(keyCode, Remotemessage.RemoteDirection.SHORT);
+        byte[] burst = new byte[frame.length * count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(frame, 0, burst, i * frame.length, frame.length);
+        }
+        if (WireTracing.isEnabled()) {
+            for (int i = 1; i < count; i++) {
+                WireTracing.traceFrame(WireTracer.Direction.OUTBOUND, frame);
+            }
+        }
+        return burst;
+    }
+
+    /**
+     * Returns the pre-encoded frame for this key press. The array is shared between callers and
+     * must not be modified.
+     */
+    public byte[] createKeyCommand(Remotemessage.RemoteKeyCode keyCode, Remotemessage.RemoteDirection remoteDirection) {
+        if (keyCode == Remotemessage.RemoteKeyCode.UNRECOGNIZED || remoteDirection == Remotemessage.RemoteDirection.UNRECOGNIZED) {
+            throw new IllegalArgumentException("Cannot encode " + keyCode + "/" + remoteDirection);
+        }
+        byte[] frame = KeyFrameTable.get(keyCode, remoteDirection);
+        WireTracing.traceFrame(WireTracer.Direction.OUTBOUND, frame);
+        return frame;
     }
 
 }
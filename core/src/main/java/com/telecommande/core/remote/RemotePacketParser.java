@@ -1,23 +1,33 @@
 package com.telecommande.core.remote;
 
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
 import com.telecommande.core.wire.PacketParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
 
 public class RemotePacketParser extends PacketParser {
 
+    private final Logger logger = LoggerFactory.getLogger(RemotePacketParser.class);
     BlockingQueue<Remotemessage.RemoteMessage> mMessageQueue;
     private final OutputStream mOutputStream;
     private final RemoteMessageManager remoteMessageManager;
 
     private final RemoteListener mRemoteListener;
 
+    private static final byte PING_REQUEST_TAG = (byte) (Remotemessage.RemoteMessage.REMOTE_PING_REQUEST_FIELD_NUMBER << 3 | 2);
+
+    /**
+     * Reused for every ping response; the output streams copy or send it before returning.
+     */
+    private final byte[] mPingResponse = new byte[RemoteMessageManager.MAX_PING_RESPONSE_FRAME];
     private boolean isConnected = false;
+    private volatile LivenessMonitor mLivenessMonitor;
+    private RemoteEventDispatcher mEventDispatcher;
 
     public RemotePacketParser(InputStream inputStream, OutputStream outputStream, BlockingQueue<Remotemessage.RemoteMessage> messageQueue, RemoteListener remoteListener) {
         super(inputStream);
@@ -27,40 +37,136 @@ public class RemotePacketParser extends PacketParser {
         mMessageQueue = messageQueue;
     }
 
+    public RemotePacketParser(OutputStream outputStream, BlockingQueue<Remotemessage.RemoteMessage> messageQueue, RemoteListener remoteListener) {
+        super();
+        mOutputStream = outputStream;
+        remoteMessageManager = new RemoteMessageManager();
+        mRemoteListener = remoteListener;
+        mMessageQueue = messageQueue;
+    }
+
+    public void setLivenessMonitor(LivenessMonitor livenessMonitor) {
+        mLivenessMonitor = livenessMonitor;
+    }
+
+    /**
+     * Ends the handshake: messages still queued and every later one go to {@code eventDispatcher}
+     * instead of the message queue.
+     */
+    public void setEventDispatcher(RemoteEventDispatcher eventDispatcher) {
+        synchronized (mMessageQueue) {
+            mEventDispatcher = eventDispatcher;
+            Remotemessage.RemoteMessage queued;
+            while ((queued = mMessageQueue.poll()) != null) {
+                eventDispatcher.publish(queued);
+            }
+        }
+    }
+
     @Override
     public void messageBufferReceived(byte[] buf) {
-        System.out.println(Arrays.toString(buf));
+        messageBufferReceived(buf, 0, buf.length);
+    }
+
+    @Override
+    public void messageBufferReceived(byte[] buf, int offset, int length) {
+        // Pings are most of the inbound traffic: answer them straight from the bytes.
+        if (length > 0 && buf[offset] == PING_REQUEST_TAG && handlePingRequest(buf, offset + 1, offset + length)) {
+            return;
+        }
         Remotemessage.RemoteMessage remoteMessage;
         try {
-            remoteMessage = Remotemessage.RemoteMessage.parseFrom(buf);
-        } catch (InvalidProtocolBufferException e) {
+            remoteMessage = Remotemessage.RemoteMessage.parseFrom(CodedInputStream.newInstance(buf, offset, length));
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
         //Send Ping Response
         if (remoteMessage.hasRemotePingRequest()) {
+            LivenessMonitor livenessMonitor = mLivenessMonitor;
+            if (livenessMonitor != null) {
+                livenessMonitor.onPingReceived();
+            }
+            long start = System.nanoTime();
             try {
                 mOutputStream.write(remoteMessageManager.createPingResponse(remoteMessage.getRemotePingRequest().getVal1()));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
+            if (livenessMonitor != null) {
+                livenessMonitor.onPingResponseWritten(System.nanoTime() - start);
+            }
         } else if (remoteMessage.hasRemoteStart()) {
             if (!isConnected)
                 mRemoteListener.onConnected();
             isConnected = true;
         } else {
-            try {
-                mMessageQueue.put(remoteMessage);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+            RemoteEventDispatcher eventDispatcher;
+            synchronized (mMessageQueue) {
+                eventDispatcher = mEventDispatcher;
+                if (eventDispatcher == null) {
+                    if (!mMessageQueue.offer(remoteMessage)) {
+                        logger.warn("Dropping message during handshake, queue full: {}", remoteMessage);
+                    }
+                    return;
+                }
             }
+            eventDispatcher.publish(remoteMessage);
         }
+    }
 
 
-        System.out.println(remoteMessage);
+    /**
+     * Reads {@code val1} out of a {@code remote_ping_request} body starting at its length prefix
+     * and writes the response. Returns false on anything unexpected so the caller falls back to
+     * a full parse.
+     */
+    private boolean handlePingRequest(byte[] buf, int position, int end) {
+        if (position >= end) {
+            return false;
+        }
+        int bodyLength = buf[position++];
+        if (bodyLength < 0 || position + bodyLength != end) {
+            return false;
+        }
+        int val1 = 0;
+        while (position < end) {
+            int tag = buf[position++];
+            if ((tag & 0x07) != 0 || tag < 0) {
+                return false;
+            }
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= end || shift >= 64) {
+                    return false;
+                }
+                b = buf[position++];
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (tag >>> 3 == Remotemessage.RemotePingRequest.VAL1_FIELD_NUMBER) {
+                val1 = (int) value;
+            }
+        }
 
+        LivenessMonitor livenessMonitor = mLivenessMonitor;
+        if (livenessMonitor != null) {
+            livenessMonitor.onPingReceived();
+        }
+        long start = System.nanoTime();
+        try {
+            int frameLength = remoteMessageManager.writePingResponse(val1, mPingResponse);
+            mOutputStream.write(mPingResponse, 0, frameLength);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (livenessMonitor != null) {
+            livenessMonitor.onPingResponseWritten(System.nanoTime() - start);
+        }
+        return true;
     }
 
-
     public interface RemotePacketParserListener {
 
         void onConnected();
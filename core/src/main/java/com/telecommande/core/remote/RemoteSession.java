@@ -1,147 +1,546 @@
 package com.telecommande.core.remote;
 
-import com.telecommande.core.ssl.KeyStoreManager;
+import com.telecommande.core.AndroidRemoteContext;
+import com.telecommande.core.ssl.SslContextCache;
+import com.telecommande.core.ssl.TlsSessionMetrics;
 import com.telecommande.core.exception.PairingException;
-import com.telecommande.core.ssl.DummyTrustManager;
+import com.telecommande.core.exception.SessionTimeoutException;
+import com.telecommande.core.metrics.TimeoutCounters;
+import com.telecommande.core.wire.BlockingConnector;
+import com.telecommande.core.wire.NioConnection;
+import com.telecommande.core.wire.NioTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.*;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.security.GeneralSecurityException;
-import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class RemoteSession {
 
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "RemoteSession");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int HANDSHAKE_QUEUE_CAPACITY = 16;
+    private static final long HANDSHAKE_POLL_MILLIS = 50;
+
+    /**
+     * Hosts that rejected the pipelined handshake, with the {@link System#nanoTime()} until which
+     * they get the strict sequence; expiring lets a TV that was updated go back to pipelining.
+     */
+    private static final Map<String, Long> STRICT_HANDSHAKE_HOSTS = new ConcurrentHashMap<>();
+    private static final long STRICT_HANDSHAKE_TTL_NANOS = TimeUnit.HOURS.toNanos(1);
+
     private final Logger logger = LoggerFactory.getLogger(RemoteSession.class);
     private final BlockingQueue<Remotemessage.RemoteMessage> mMessageQueue;
-    private static RemoteMessageManager mMessageManager;
+    private final RemoteMessageManager mMessageManager = new RemoteMessageManager();
     private final String mHost;
     private final int mPort;
     private final RemoteSessionListener mRemoteSessionListener;
     int retry;
-    OutputStream outputStream;
 
-    private SSLSocket mSslSocket;
+    private final NioTransport mTransport;
+    private volatile Link mLink;
+    private long mGeneration;
+    private volatile boolean isLastHandshakeResumed;
+    private volatile LivenessMonitor mLivenessMonitor;
+    private volatile ConnectTimings mLastConnectTimings;
+    private final ReconnectEngine mReconnectEngine;
+    private final RemoteEventDispatcher mEventDispatcher;
+    private final VolumeState mVolumeState = new VolumeState();
+    private final VolumeController mVolumeController;
+    private final ImeSession mImeSession;
 
     public RemoteSession(String host, int port, RemoteSessionListener remoteSessionListener) {
-        mMessageQueue = new LinkedBlockingDeque<>();
-        mMessageManager = new RemoteMessageManager();
+        this(host, port, remoteSessionListener, null);
+    }
+
+    /**
+     * @param transport shared non-blocking transport, or {@code null} to use a blocking socket
+     *                  with a dedicated reader thread
+     */
+    public RemoteSession(String host, int port, RemoteSessionListener remoteSessionListener, NioTransport transport) {
+        mTransport = transport;
+        // Only carries the handshake replies; the event dispatcher takes over once connected.
+        mMessageQueue = new LinkedBlockingDeque<>(HANDSHAKE_QUEUE_CAPACITY);
+        AndroidRemoteContext context = AndroidRemoteContext.getInstance();
+        mEventDispatcher = new RemoteEventDispatcher(context.getEventQueueCapacity(), context.getEventOverflowPolicy());
+        mEventDispatcher.register(RemoteEventDispatcher.EventType.SET_VOLUME_LEVEL, mVolumeState);
+        mVolumeController = new VolumeController(mVolumeState, this::sendFrame, SCHEDULER);
+        // A batch edit sets the whole field, so an identical one still queued may absorb it.
+        mImeSession = new ImeSession(frame -> sendFrame(frame, true), SCHEDULER);
+        mEventDispatcher.register(RemoteEventDispatcher.EventType.IME_SHOW_REQUEST, mImeSession::onShowRequest);
+        mEventDispatcher.register(RemoteEventDispatcher.EventType.IME_KEY_INJECT, mImeSession::onKeyInject);
+        mEventDispatcher.register(RemoteEventDispatcher.EventType.IME_BATCH_EDIT, mImeSession::onBatchEdit);
         mHost = host;
         mPort = port;
         mRemoteSessionListener = remoteSessionListener;
+        mReconnectEngine = new ReconnectEngine(host, port, new ReconnectEngine.Connector() {
+            @Override
+            public void connect() throws Exception {
+                closeConnection();
+                try {
+                    open();
+                } catch (Exception e) {
+                    closeConnection();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void disconnect() {
+                closeConnection();
+            }
+        }, createReconnectListener(), SCHEDULER);
     }
 
     public void connect() throws GeneralSecurityException, IOException, InterruptedException, PairingException {
+        try {
+            open();
+        } catch (SSLException sslException) {
+            mRemoteSessionListener.onSslError();
+            closeSocket();
+        } catch (Exception e) {
+            e.printStackTrace();
+            mRemoteSessionListener.onError(e.getMessage());
+            closeSocket();
+        }
+    }
 
+    private void open() throws Exception {
+        ConnectTimings timings = new ConnectTimings();
+        long connectStartMillis = System.currentTimeMillis();
+        timings.start();
+        SSLContext sSLContext = SslContextCache.getInstance().get();
+        timings.mark(ConnectTimings.Phase.IDENTITY);
+
+        long generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(mHost), mPort);
+        timings.mark(ConnectTimings.Phase.DNS);
+
+        boolean isPipelined = AndroidRemoteContext.getInstance().isPipelinedHandshake() && !isStrictHandshakeHost(mHost);
         try {
-            SSLContext sSLContext = SSLContext.getInstance("TLS");
-            sSLContext.init(new KeyStoreManager().getKeyManagers(), new TrustManager[]{new DummyTrustManager()}, new SecureRandom());
-            SSLSocketFactory sslsocketfactory = sSLContext.getSocketFactory();
-            SSLSocket sSLSocket = (SSLSocket) sslsocketfactory.createSocket(mHost, mPort);
-
-            this.mSslSocket = sSLSocket;
-
-            mSslSocket.setNeedClientAuth(true);
-            mSslSocket.setUseClientMode(true);
-            mSslSocket.setKeepAlive(true);
-            mSslSocket.setTcpNoDelay(true);
-            mSslSocket.startHandshake();
-
-            outputStream = mSslSocket.getOutputStream();
-            new RemotePacketParser(mSslSocket.getInputStream(), outputStream, mMessageQueue, new RemoteListener() {
-                @Override
-                public void onConnected() {
-                    mRemoteSessionListener.onConnected();
-                }
+            connectOnce(address, sSLContext, generation, isPipelined, timings, connectStartMillis);
+        } catch (HandshakeRejectedException e) {
+            if (!isPipelined) {
+                throw e;
+            }
+            // One retry, reusing the identity and address; the TLS session is resumed.
+            logger.info("Pipelined handshake with {} rejected ({}), retrying with the strict sequence", mHost, e.getMessage());
+            STRICT_HANDSHAKE_HOSTS.put(mHost, System.nanoTime() + STRICT_HANDSHAKE_TTL_NANOS);
+            ConnectMetrics.getInstance().recordHandshakeFallback();
+            connectOnce(address, sSLContext, generation, false, timings, connectStartMillis);
+        }
+    }
 
-                @Override
-                public void onDisconnected() {
+    private void connectOnce(InetSocketAddress address, SSLContext sSLContext, long generation, boolean isPipelined,
+                             ConnectTimings timings, long connectStartMillis) throws Exception {
+        AndroidRemoteContext context = AndroidRemoteContext.getInstance();
+        LivenessMonitor livenessMonitor = new LivenessMonitor(SCHEDULER, context.getPingIntervalMillis(),
+                context.getMaxMissedPings(), this::onStale);
+        SSLSession session;
+        RemotePacketParser parser;
+        Link link;
+        if (mTransport != null) {
+            NioConnection connection = mTransport.open(address, mHost, mPort, sSLContext);
+            link = attach(new Link(connection, null, connection.getOutputStream()), generation);
+            parser = new RemotePacketParser(link.mOutputStream, mMessageQueue, createRemoteListener());
+            parser.setLivenessMonitor(livenessMonitor);
+            connection.start(parser);
+            connection.awaitHandshake(context.getConnectTimeoutMillis() + context.getHandshakeTimeoutMillis());
+            timings.mark(ConnectTimings.Phase.TCP_CONNECT, connection.getConnectedNanos());
+            session = connection.getSession();
+        } else {
+            Socket socket = BlockingConnector.connect(address, context.getConnectTimeoutMillis());
+            timings.mark(ConnectTimings.Phase.TCP_CONNECT);
+
+            SSLSocket sslSocket = BlockingConnector.startTls(sSLContext, socket, mHost, mPort, context.getHandshakeTimeoutMillis());
+            link = attach(new Link(null, sslSocket, sslSocket.getOutputStream()), generation);
+            session = sslSocket.getSession();
+
+            parser = new RemotePacketParser(sslSocket.getInputStream(), link.mOutputStream, mMessageQueue, createRemoteListener());
+            parser.setLivenessMonitor(livenessMonitor);
+            parser.start();
+        }
+        timings.mark(ConnectTimings.Phase.TLS_HANDSHAKE);
+        long handshakeNanos = timings.getNanos(ConnectTimings.Phase.TCP_CONNECT) + timings.getNanos(ConnectTimings.Phase.TLS_HANDSHAKE);
+        isLastHandshakeResumed = TlsSessionMetrics.getInstance().record(session, connectStartMillis, handshakeNanos);
+        logger.debug("TLS handshake to {}:{} {} in {} ms", mHost, mPort, isLastHandshakeResumed ? "resumed" : "full",
+                timings.getNanos(ConnectTimings.Phase.TLS_HANDSHAKE) / 1_000_000);
 
-                }
+        try {
+            if (isPipelined) {
+                pipelinedHandshake(link, parser, timings);
+            } else {
+                strictHandshake(link, timings);
+            }
+        } catch (HandshakeRejectedException e) {
+            detach(link);
+            throw e;
+        }
+        mLastConnectTimings = timings;
+        logger.debug("Connected to {}: {}", mHost, timings);
+        ConnectMetrics.getInstance().record(mHost, timings);
+
+        // The selector thread already batches NIO writes, so NIO only needs the bound; a blocking socket needs a writer thread.
+        CommandWriter commandWriter = null;
+        NioCommandQueue commandQueue = null;
+        if (mTransport != null) {
+            commandQueue = new NioCommandQueue(link.mConnection, context.getSendQueueCapacity(), context.getSendOverflowPolicy());
+        } else {
+            commandWriter = new CommandWriter(link.mOutputStream, context.getSendQueueCapacity(),
+                    context.getSendOverflowPolicy(), "CommandWriter-" + mHost);
+        }
+        Link active = link.activate(commandWriter, commandQueue, livenessMonitor);
+        synchronized (this) {
+            if (mLink != link) {
+                active.close();
+                throw new IOException("Remote session to " + mHost + " closed while connecting");
+            }
+            mLink = active;
+            mLivenessMonitor = livenessMonitor;
+        }
+        livenessMonitor.start();
+        parser.setEventDispatcher(mEventDispatcher);
+    }
+
+    /**
+     * Drops a connection the TV rejected without bumping the generation, so the retry can still
+     * attach unless the session was closed in the meantime.
+     */
+    private void detach(Link link) {
+        synchronized (this) {
+            if (mLink == link) {
+                mLink = null;
+            }
+        }
+        mMessageQueue.clear();
+        link.close();
+    }
 
-                @Override
-                public void onVolume() {
+    /**
+     * Publishes a connection that is still handshaking so {@link #closeConnection()} can abort it,
+     * unless the session was closed since {@code generation} was read.
+     */
+    private Link attach(Link link, long generation) throws IOException {
+        synchronized (this) {
+            if (mGeneration == generation) {
+                mLink = link;
+                return link;
+            }
+        }
+        link.close();
+        throw new IOException("Remote session to " + mHost + " closed while connecting");
+    }
 
-                }
+    private void strictHandshake(Link link, ConnectTimings timings) throws IOException, InterruptedException {
+        Remotemessage.RemoteMessage remoteMessage = waitForMessage();
+        logger.info(remoteMessage.toString());
+        timings.mark(ConnectTimings.Phase.FIRST_MESSAGE);
 
-                @Override
-                public void onPerformInputDeviceRole() throws PairingException {
+        link.mOutputStream.write(createRemoteConfigure());
 
-                }
+        waitForMessage();
+        timings.mark(ConnectTimings.Phase.CONFIGURE_ACK);
 
-                @Override
-                public void onPerformOutputDeviceRole(byte[] gamma) throws PairingException {
+        link.mOutputStream.write(mMessageManager.createRemoteActive(622));
+        timings.mark(ConnectTimings.Phase.SET_ACTIVE);
+    }
 
+    /**
+     * Our configure and set-active do not depend on anything the TV sends, so both go out in one
+     * write right after TLS and the TV's two messages are only checked afterwards. Saves the
+     * round trip of waiting for the TV's configure before answering it.
+     */
+    private void pipelinedHandshake(Link link, RemotePacketParser parser, ConnectTimings timings) throws IOException, InterruptedException {
+        byte[] remoteConfigure = createRemoteConfigure();
+        byte[] remoteActive = mMessageManager.createRemoteActive(622);
+        byte[] frames = Arrays.copyOf(remoteConfigure, remoteConfigure.length + remoteActive.length);
+        System.arraycopy(remoteActive, 0, frames, remoteConfigure.length, remoteActive.length);
+        long sentNanos = System.nanoTime();
+        link.mOutputStream.write(frames);
+
+        long timeoutMillis = AndroidRemoteContext.getInstance().getMessageTimeoutMillis();
+        Remotemessage.RemoteMessage remoteMessage = waitForHandshakeMessage(link, parser, timeoutMillis);
+        logger.info(remoteMessage.toString());
+        timings.mark(ConnectTimings.Phase.FIRST_MESSAGE);
+
+        // A TV that ignored the early set-active stays silent; do not wait the full timeout for it,
+        // and treat the silence as a rejection so the strict sequence gets its turn.
+        long firstWaitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentNanos);
+        try {
+            waitForHandshakeMessage(link, parser, Math.min(timeoutMillis, Math.max(1000, 4 * firstWaitMillis)));
+        } catch (SessionTimeoutException e) {
+            throw new HandshakeRejectedException("TV did not acknowledge the early set-active: " + e.getMessage());
+        }
+        timings.mark(ConnectTimings.Phase.CONFIGURE_ACK);
+        timings.mark(ConnectTimings.Phase.SET_ACTIVE);
+        timings.setPipelined(true);
+    }
+
+    /**
+     * Like {@link #waitForMessage()}, but fails fast if the TV answers with an error or drops the
+     * connection.
+     */
+    private Remotemessage.RemoteMessage waitForHandshakeMessage(Link link, RemotePacketParser parser, long timeoutMillis)
+            throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            Remotemessage.RemoteMessage remoteMessage = mMessageQueue.poll(HANDSHAKE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (remoteMessage != null) {
+                if (remoteMessage.hasRemoteError()) {
+                    throw new HandshakeRejectedException("TV rejected the handshake: " + remoteMessage.getRemoteError());
                 }
+                return remoteMessage;
+            }
+            boolean isOpen = link.mConnection != null ? !link.mConnection.isClosed() : parser.isAlive();
+            if (!isOpen) {
+                throw new HandshakeRejectedException("TV closed the connection during the handshake");
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw TimeoutCounters.count(new SessionTimeoutException(SessionTimeoutException.Phase.MESSAGE,
+                        "No message from " + mHost + " within " + timeoutMillis + " ms"));
+            }
+        }
+    }
 
-                @Override
-                public void onSessionEnded() {
+    private static boolean isStrictHandshakeHost(String host) {
+        Long until = STRICT_HANDSHAKE_HOSTS.get(host);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until < 0) {
+            return true;
+        }
+        STRICT_HANDSHAKE_HOSTS.remove(host, until);
+        return false;
+    }
 
-                }
+    private byte[] createRemoteConfigure() {
+        return mMessageManager.createRemoteConfigure(622, "ROG Strix G531GT_G531GT", "ASUSTeK COMPUTER INC.", 1, "1");
+    }
 
-                @Override
-                public void onError(String message) {
+    private RemoteListener createRemoteListener() {
+        return new RemoteListener() {
+            @Override
+            public void onConnected() {
+                mRemoteSessionListener.onConnected();
+            }
 
-                }
+            @Override
+            public void onDisconnected() {
 
-                @Override
-                public void onLog(String message) {
+            }
 
-                }
+            @Override
+            public void onPerformInputDeviceRole() throws PairingException {
 
-                @Override
-                public void sSLException() {
+            }
 
-                }
-            }).start();
+            @Override
+            public void onPerformOutputDeviceRole(byte[] gamma) throws PairingException {
 
-            Remotemessage.RemoteMessage remoteMessage = waitForMessage();
-            logger.info(remoteMessage.toString());
+            }
 
-            byte[] remoteConfigure = mMessageManager.createRemoteConfigure(622, "ROG Strix G531GT_G531GT", "ASUSTeK COMPUTER INC.", 1, "1");
+            @Override
+            public void onSessionEnded() {
 
-            outputStream.write(remoteConfigure);
+            }
 
-            waitForMessage();
+            @Override
+            public void onError(String message) {
 
-            byte[] remoteActive = mMessageManager.createRemoteActive(622);
-            outputStream.write(remoteActive);
-        } catch (SSLException sslException) {
-            mRemoteSessionListener.onSslError();
-            closeSocket();
-        } catch (Exception e) {
-            e.printStackTrace();
-            mRemoteSessionListener.onError(e.getMessage());
-            closeSocket();
+            }
+
+            @Override
+            public void onLog(String message) {
+
+            }
+
+            @Override
+            public void sSLException() {
+
+            }
+        };
+    }
+
+    private void onStale(long silenceMillis) {
+        logger.warn("No ping from {} for {} ms, reconnecting", mHost, silenceMillis);
+        closeConnection();
+        mReconnectEngine.start();
+    }
+
+    private ReconnectEngine.Listener createReconnectListener() {
+        return new ReconnectEngine.Listener() {
+            @Override
+            public void onStateChanged(ReconnectEngine.State state) {
+                logger.debug("Reconnect to {}: {}", mHost, state);
+            }
+
+            @Override
+            public void onReconnected(int attempts, long durationNanos) {
+                logger.info("Reconnected to {} after {} attempt(s) in {} ms", mHost, attempts, durationNanos / 1_000_000);
+            }
+
+            @Override
+            public void onGaveUp(int attempts, Throwable lastError) {
+                logger.warn("Giving up reconnecting to {} after {} attempt(s)", mHost, attempts);
+                if (lastError instanceof SSLException) {
+                    try {
+                        mRemoteSessionListener.onSslError();
+                    } catch (Exception e) {
+                        mRemoteSessionListener.onError(e.getMessage());
+                    }
+                } else {
+                    mRemoteSessionListener.onDisconnected();
+                }
+            }
+        };
+    }
+
+    /**
+     * Heartbeat statistics of the current connection, or {@code null} before it is established.
+     */
+    public LivenessMonitor getLivenessMonitor() {
+        return mLivenessMonitor;
+    }
+
+    Remotemessage.RemoteMessage waitForMessage() throws InterruptedException, SessionTimeoutException {
+        long timeoutMillis = AndroidRemoteContext.getInstance().getMessageTimeoutMillis();
+        Remotemessage.RemoteMessage remoteMessage = mMessageQueue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (remoteMessage == null) {
+            throw TimeoutCounters.count(new SessionTimeoutException(SessionTimeoutException.Phase.MESSAGE,
+                    "No message from " + mHost + " within " + timeoutMillis + " ms"));
         }
+        return remoteMessage;
     }
 
-    Remotemessage.RemoteMessage waitForMessage() throws InterruptedException, PairingException {
-        return mMessageQueue.take();
+    /**
+     * Phase breakdown of the last successful connect, or {@code null} if there was none.
+     */
+    public ConnectTimings getLastConnectTimings() {
+        return mLastConnectTimings;
     }
 
+    /**
+     * Whether the most recent {@link #connect()} resumed a cached TLS session.
+     */
+    public boolean isLastHandshakeResumed() {
+        return isLastHandshakeResumed;
+    }
+
+    /**
+     * Starts reconnecting in the background with backoff; progress is reported through
+     * {@link #getReconnectEngine()} and, if it gives up, the session listener.
+     */
     public void attemptToReconnect() {
         retry++;
-        try {
-            connect();
-        } catch (GeneralSecurityException | IOException | InterruptedException | PairingException e) {
-            mRemoteSessionListener.onError(e.getMessage());
-            throw new RuntimeException(e);
-        }
+        closeConnection();
+        mReconnectEngine.start();
     }
 
+    /**
+     * Delivers what the TV sends on its own (volume, IME, errors, ...). Handlers stay registered
+     * across reconnects.
+     */
+    public RemoteEventDispatcher getEventDispatcher() {
+        return mEventDispatcher;
+    }
 
-    public void sendCommand(Remotemessage.RemoteKeyCode remoteKeyCode, Remotemessage.RemoteDirection remoteDirection) {
-        try {
-            outputStream.write(mMessageManager.createKeyCommand(remoteKeyCode,remoteDirection));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * The TV's volume as last reported on this session, kept across reconnects.
+     */
+    public VolumeState getVolumeState() {
+        return mVolumeState;
+    }
+
+    /**
+     * Steps the volume to {@code level}; see {@link VolumeController#setVolume(int)}.
+     */
+    public CompletableFuture<Integer> setVolume(int level) {
+        return mVolumeController.setVolume(level);
+    }
+
+    public VolumeController getVolumeController() {
+        return mVolumeController;
+    }
+
+    public ImeSession getImeSession() {
+        return mImeSession;
+    }
+
+    public ReconnectEngine getReconnectEngine() {
+        return mReconnectEngine;
+    }
+
+    /**
+     * Queues a key press on the session's writer thread. The future fails if the session is not
+     * connected, the send queue rejected the command, or the write failed.
+     */
+    public CompletableFuture<Void> sendCommand(Remotemessage.RemoteKeyCode remoteKeyCode, Remotemessage.RemoteDirection remoteDirection) {
+        return sendFrame(mMessageManager.createKeyCommand(remoteKeyCode, remoteDirection));
+    }
+
+    /**
+     * Queues an already framed message, e.g. one encoded once and shared by a group of sessions.
+     * The array must not be modified afterwards.
+     */
+    public CompletableFuture<Void> sendFrame(byte[] frame) {
+        return sendFrame(frame, false);
+    }
+
+    /**
+     * @param isIdempotent whether sending the frame twice has the same effect as sending it once;
+     *                     see {@link CommandWriter.OverflowPolicy#COALESCE}
+     */
+    public CompletableFuture<Void> sendFrame(byte[] frame, boolean isIdempotent) {
+        Link link = mLink;
+        if (link == null || !link.isActive) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("Remote session not connected"));
+            return future;
         }
+        return link.mCommandWriter != null ? link.mCommandWriter.submit(frame, isIdempotent) : link.mCommandQueue.submit(frame, isIdempotent);
+    }
+
+    /**
+     * Whether {@link #connect()} completed and the underlying connection is still open.
+     */
+    public boolean isConnected() {
+        Link link = mLink;
+        return link != null && link.isActive && link.isOpen();
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    /**
+     * The writer thread of a blocking connection, or {@code null} when connected through a
+     * {@link NioTransport}.
+     */
+    public CommandWriter getCommandWriter() {
+        Link link = mLink;
+        return link != null ? link.mCommandWriter : null;
     }
 
     public interface RemoteSessionListener {
@@ -155,22 +554,104 @@ public class RemoteSession {
     }
 
     public void closeSocket() {
-        if (outputStream != null) {
+        mReconnectEngine.cancel();
+        closeConnection();
+    }
+
+    private void closeConnection() {
+        Link link;
+        synchronized (this) {
+            link = mLink;
+            mLink = null;
+            mGeneration++;
+        }
+        mMessageQueue.clear();
+        if (link != null) {
+            link.close();
+        }
+    }
+
+    /**
+     * The TV answered the pipelined handshake with an error or closed the connection right after
+     * it; unlike a timeout or a dropped network this is worth retrying with the strict sequence.
+     */
+    private static final class HandshakeRejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HandshakeRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The sockets and writer of one connection. {@link #open()} and {@link #closeConnection()}
+     * swap it under the session lock; senders read it through the volatile {@link #mLink}, so
+     * they never see a connection half built or half closed.
+     */
+    private final class Link {
+        private final NioConnection mConnection;
+        private final SSLSocket mSslSocket;
+        private final OutputStream mOutputStream;
+        /**
+         * Only set on a blocking connection once the handshake completed.
+         */
+        private final CommandWriter mCommandWriter;
+        /**
+         * Only set on a NIO connection once the handshake completed.
+         */
+        private final NioCommandQueue mCommandQueue;
+        private final LivenessMonitor mLivenessMonitor;
+        private final boolean isActive;
+
+        Link(NioConnection connection, SSLSocket sslSocket, OutputStream outputStream) {
+            this(connection, sslSocket, outputStream, null, null, null, false);
+        }
+
+        private Link(NioConnection connection, SSLSocket sslSocket, OutputStream outputStream, CommandWriter commandWriter,
+                     NioCommandQueue commandQueue, LivenessMonitor livenessMonitor, boolean active) {
+            mConnection = connection;
+            mSslSocket = sslSocket;
+            mOutputStream = outputStream;
+            mCommandWriter = commandWriter;
+            mCommandQueue = commandQueue;
+            mLivenessMonitor = livenessMonitor;
+            isActive = active;
+        }
+
+        Link activate(CommandWriter commandWriter, NioCommandQueue commandQueue, LivenessMonitor livenessMonitor) {
+            return new Link(mConnection, mSslSocket, mOutputStream, commandWriter, commandQueue, livenessMonitor, true);
+        }
+
+        boolean isOpen() {
+            return mConnection != null ? !mConnection.isClosed() : !mSslSocket.isClosed();
+        }
+
+        void close() {
+            if (mLivenessMonitor != null) {
+                mLivenessMonitor.stop();
+            }
+            if (mCommandWriter != null) {
+                mCommandWriter.close();
+            }
+            if (mCommandQueue != null) {
+                mCommandQueue.close();
+            }
             try {
-                outputStream.close();
+                mOutputStream.close();
             } catch (IOException e) {
                 logger.error("IOException while closing RemoteSession OutputStream: " + e.getMessage(), e);
             }
-            outputStream = null;
-        }
-        if (mSslSocket != null && !mSslSocket.isClosed()) {
-            logger.debug("Closing RemoteSession SSLSocket.");
-            try {
-                mSslSocket.close();
-            } catch (IOException e) {
-                logger.error("IOException while closing RemoteSession SSLSocket: " + e.getMessage(), e);
+            if (mConnection != null) {
+                mConnection.close();
+            }
+            if (mSslSocket != null && !mSslSocket.isClosed()) {
+                logger.debug("Closing RemoteSession SSLSocket.");
+                try {
+                    mSslSocket.close();
+                } catch (IOException e) {
+                    logger.error("IOException while closing RemoteSession SSLSocket: " + e.getMessage(), e);
+                }
             }
         }
-        mSslSocket = null;
     }
 }
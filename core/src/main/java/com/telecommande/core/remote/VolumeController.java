@@ -0,0 +1,195 @@
+package com.telecommande.core.remote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sets the TV's volume to an absolute level, which the protocol has no message for.
+ * <p>
+ * The difference to the level in {@link VolumeState} is sent as one burst of VOLUME_UP or
+ * VOLUME_DOWN presses in a single write. Once the TV's reports settle, any remaining difference
+ * (a dropped press, a TV stepping by more than one) is corrected with another burst, up to
+ * {@code maxRounds} in total. A call made while a burst is still unconfirmed starts from the
+ * level that burst is expected to reach, so dragging a slider does not overshoot.
+ */
+public class VolumeController implements VolumeState.Listener {
+
+    public interface FrameSink {
+        CompletableFuture<Void> send(byte[] frame);
+    }
+
+    private static final int NO_EXPECTATION = -1;
+
+    private final Logger logger = LoggerFactory.getLogger(VolumeController.class);
+    private final VolumeState mVolumeState;
+    private final FrameSink mFrameSink;
+    private final ScheduledExecutorService mScheduler;
+    private final RemoteMessageManager mMessageManager = new RemoteMessageManager();
+    private final AtomicLong mBurstCount = new AtomicLong();
+    private final AtomicLong mStepCount = new AtomicLong();
+    private final AtomicLong mCorrectionCount = new AtomicLong();
+
+    private long mSettleNanos = TimeUnit.MILLISECONDS.toNanos(300);
+    private long mTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(2000);
+    private int mMaxRounds = 3;
+
+    private CompletableFuture<Integer> mPending;
+    private int mTarget;
+    private int mRounds;
+    private int mExpectedLevel = NO_EXPECTATION;
+    private long mBurstNanos;
+    private long mLastChangeNanos;
+    private boolean isChangeSeen;
+    private ScheduledFuture<?> mCheckTask;
+
+    public VolumeController(VolumeState volumeState, FrameSink frameSink, ScheduledExecutorService scheduler) {
+        mVolumeState = volumeState;
+        mFrameSink = frameSink;
+        mScheduler = scheduler;
+        volumeState.subscribe(this, Runnable::run);
+    }
+
+    /**
+     * @param settleMillis quiet period after the last report before the level is taken as final
+     * @param timeoutMillis longest wait for reports after a burst
+     */
+    public synchronized void setReconciliation(long settleMillis, long timeoutMillis, int maxRounds) {
+        mSettleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        mTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        mMaxRounds = maxRounds;
+    }
+
+    /**
+     * Steps the volume to {@code level}, clamped to the TV's range. The future completes with the
+     * level the TV finally reported, which may differ from {@code level} if corrections ran out;
+     * it is cancelled if a later call supersedes it.
+     */
+    public synchronized CompletableFuture<Integer> setVolume(int level) {
+        if (!mVolumeState.isKnown()) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("TV has not reported its volume yet"));
+            return future;
+        }
+        int max = mVolumeState.getMax();
+        int target = Math.max(0, max > 0 ? Math.min(level, max) : level);
+        if (mPending != null) {
+            mPending.cancel(false);
+        }
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        mPending = future;
+        mTarget = target;
+        mRounds = 0;
+        sendBurst(mExpectedLevel != NO_EXPECTATION ? mExpectedLevel : mVolumeState.getLevel());
+        return future;
+    }
+
+    public long getBurstCount() {
+        return mBurstCount.get();
+    }
+
+    public long getStepCount() {
+        return mStepCount.get();
+    }
+
+    /**
+     * Bursts sent because the reported level did not match the target after the first one.
+     */
+    public long getCorrectionCount() {
+        return mCorrectionCount.get();
+    }
+
+    @Override
+    public synchronized void onVolumeChanged(int level, int max, boolean muted, int changed) {
+        if ((changed & VolumeState.LEVEL) == 0 || mExpectedLevel == NO_EXPECTATION) {
+            return;
+        }
+        mLastChangeNanos = System.nanoTime();
+        isChangeSeen = true;
+        if (level == mExpectedLevel) {
+            check();
+        }
+    }
+
+    private void sendBurst(int from) {
+        int steps = mTarget - from;
+        if (steps == 0) {
+            if (mExpectedLevel == NO_EXPECTATION) {
+                complete(from);
+            }
+            // Otherwise the burst in flight already aims at the target; wait for it to settle.
+            return;
+        }
+        Remotemessage.RemoteKeyCode keyCode = steps > 0
+                ? Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_UP : Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_DOWN;
+        mRounds++;
+        mExpectedLevel = mTarget;
+        mBurstNanos = System.nanoTime();
+        mLastChangeNanos = mBurstNanos;
+        isChangeSeen = false;
+        mBurstCount.incrementAndGet();
+        mStepCount.addAndGet(Math.abs(steps));
+        CompletableFuture<Integer> future = mPending;
+        mFrameSink.send(mMessageManager.createKeyBurst(keyCode, Math.abs(steps))).whenComplete((ignored, error) -> {
+            if (error != null) {
+                synchronized (VolumeController.this) {
+                    mExpectedLevel = NO_EXPECTATION;
+                    stopChecking();
+                }
+                future.completeExceptionally(error);
+            }
+        });
+        if (mCheckTask == null) {
+            long period = Math.max(1, mSettleNanos / 3);
+            mCheckTask = mScheduler.scheduleWithFixedDelay(this::onCheck, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void onCheck() {
+        check();
+    }
+
+    private void check() {
+        if (mExpectedLevel == NO_EXPECTATION) {
+            stopChecking();
+            return;
+        }
+        long now = System.nanoTime();
+        int level = mVolumeState.getLevel();
+        boolean isSettled = level == mExpectedLevel || (isChangeSeen && now - mLastChangeNanos >= mSettleNanos);
+        if (!isSettled && now - mBurstNanos < mTimeoutNanos) {
+            return;
+        }
+        mExpectedLevel = NO_EXPECTATION;
+        if (level == mTarget || mPending == null || mPending.isDone()) {
+            stopChecking();
+            complete(level);
+        } else if (mRounds < mMaxRounds) {
+            mCorrectionCount.incrementAndGet();
+            logger.debug("Volume at {} after burst, target {}: correcting", level, mTarget);
+            sendBurst(level);
+        } else {
+            stopChecking();
+            logger.warn("Volume stuck at {} after {} bursts, target was {}", level, mRounds, mTarget);
+            complete(level);
+        }
+    }
+
+    private void complete(int level) {
+        if (mPending != null) {
+            mPending.complete(level);
+        }
+    }
+
+    private void stopChecking() {
+        if (mCheckTask != null) {
+            mCheckTask.cancel(false);
+            mCheckTask = null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.telecommande.core.remote;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last volume reported by the TV through {@code RemoteSetVolumeLevel}.
+ * <p>
+ * Level, maximum and mute flag are packed into one word, so reads are a single volatile load and
+ * always consistent. Subscribers are conflated: while a callback is pending on their executor,
+ * further updates only move the state on, and the callback reports whatever is current then,
+ * with the fields that changed since that subscriber's previous callback. A slow UI thread
+ * therefore sees fewer, never stale, updates.
+ */
+public class VolumeState implements RemoteEventDispatcher.Handler<Remotemessage.RemoteSetVolumeLevel> {
+
+    public static final int LEVEL = 1;
+    public static final int MAX = 1 << 1;
+    public static final int MUTED = 1 << 2;
+
+    public interface Listener {
+        /**
+         * @param changed set of {@link #LEVEL}, {@link #MAX} and {@link #MUTED} that differ from
+         *                the previous callback to this listener; all of them on the first one
+         */
+        void onVolumeChanged(int level, int max, boolean muted, int changed);
+    }
+
+    private static final int VALUE_BITS = 30;
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+    private static final long MUTED_BIT = 1L << (2 * VALUE_BITS);
+    private static final long KNOWN_BIT = MUTED_BIT << 1;
+
+    private final AtomicLong mState = new AtomicLong();
+    private final AtomicLong mUpdateCount = new AtomicLong();
+    private final List<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void onEvent(Remotemessage.RemoteSetVolumeLevel volume) {
+        update(volume.getVolumeLevel(), volume.getVolumeMax(), volume.getVolumeMuted());
+    }
+
+    void update(int level, int max, boolean muted) {
+        long state = pack(level, max, muted);
+        if (mState.getAndSet(state) == state) {
+            return;
+        }
+        mUpdateCount.incrementAndGet();
+        for (Subscription subscription : mSubscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Calls {@code listener} on {@code executor} whenever the volume changes, starting with the
+     * current volume if one is known.
+     */
+    public void subscribe(Listener listener, Executor executor) {
+        Subscription subscription = new Subscription(listener, executor);
+        mSubscriptions.add(subscription);
+        if (isKnown()) {
+            subscription.schedule();
+        }
+    }
+
+    public void unsubscribe(Listener listener) {
+        mSubscriptions.removeIf(subscription -> subscription.mListener == listener);
+    }
+
+    /**
+     * Whether the TV has reported its volume on this session yet.
+     */
+    public boolean isKnown() {
+        return (mState.get() & KNOWN_BIT) != 0;
+    }
+
+    public int getLevel() {
+        return level(mState.get());
+    }
+
+    public int getMax() {
+        return max(mState.get());
+    }
+
+    public boolean isMuted() {
+        return (mState.get() & MUTED_BIT) != 0;
+    }
+
+    /**
+     * Number of reports that changed the state; repeats of the same volume are not counted.
+     */
+    public long getUpdateCount() {
+        return mUpdateCount.get();
+    }
+
+    @Override
+    public String toString() {
+        long state = mState.get();
+        if ((state & KNOWN_BIT) == 0) {
+            return "unknown";
+        }
+        return level(state) + "/" + max(state) + ((state & MUTED_BIT) != 0 ? " muted" : "");
+    }
+
+    private static long pack(int level, int max, boolean muted) {
+        return KNOWN_BIT | (muted ? MUTED_BIT : 0)
+                | (Math.min(max & 0xFFFFFFFFL, VALUE_MASK) << VALUE_BITS)
+                | Math.min(level & 0xFFFFFFFFL, VALUE_MASK);
+    }
+
+    private static int level(long state) {
+        return (int) (state & VALUE_MASK);
+    }
+
+    private static int max(long state) {
+        return (int) ((state >>> VALUE_BITS) & VALUE_MASK);
+    }
+
+    private final class Subscription implements Runnable {
+        private final Listener mListener;
+        private final Executor mExecutor;
+        private final AtomicBoolean isScheduled = new AtomicBoolean();
+        private long mLastDelivered;
+
+        Subscription(Listener listener, Executor executor) {
+            mListener = listener;
+            mExecutor = executor;
+        }
+
+        void schedule() {
+            if (isScheduled.compareAndSet(false, true)) {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public synchronized void run() {
+            // Cleared before reading so an update racing with this callback schedules another.
+            isScheduled.set(false);
+            long state = mState.get();
+            long previous = mLastDelivered;
+            int changed = 0;
+            if ((previous & KNOWN_BIT) == 0) {
+                changed = LEVEL | MAX | MUTED;
+            } else {
+                if (level(state) != level(previous)) changed |= LEVEL;
+                if (max(state) != max(previous)) changed |= MAX;
+                if ((state & MUTED_BIT) != (previous & MUTED_BIT)) changed |= MUTED;
+            }
+            if (changed == 0 || !mSubscriptions.contains(this)) {
+                return;
+            }
+            mLastDelivered = state;
+            mListener.onVolumeChanged(level(state), max(state), (state & MUTED_BIT) != 0, changed);
+        }
+    }
+}
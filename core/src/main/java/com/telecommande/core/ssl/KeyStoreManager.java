@@ -2,8 +2,10 @@ package com.telecommande.core.ssl;
 
 import com.telecommande.core.AndroidRemoteContext;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
@@ -179,7 +181,9 @@ public final class KeyStoreManager {
         try {
             if (!useAndroidKeyStore()) {
                 keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-                keyStore.load(Files.newInputStream(androidRemoteContext.getKeyStoreFile().toPath()), androidRemoteContext.getKeyStorePass());
+                try (InputStream inputStream = Files.newInputStream(androidRemoteContext.getKeyStoreFile().toPath())) {
+                    keyStore.load(inputStream, androidRemoteContext.getKeyStorePass());
+                }
             } else {
                 keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
                 keyStore.load(null);
@@ -192,6 +196,7 @@ public final class KeyStoreManager {
         if (keyStore2 == null || !hasServerIdentityAlias(keyStore2)) {
             try {
                 KeyStore createIdentityKeyStore = createIdentityKeyStore();
+                markUnpaired();
                 store(createIdentityKeyStore);
                 return createIdentityKeyStore;
             } catch (GeneralSecurityException e2) {
@@ -220,6 +225,7 @@ public final class KeyStoreManager {
     }
 
     public void clear() {
+        markUnpaired();
         clearKeyStore();
         try {
             createIdentity(this.mKeyStore);
@@ -228,6 +234,48 @@ public final class KeyStoreManager {
         store();
     }
 
+    /**
+     * Whether {@code keyStoreFile} holds an identity a TV has accepted. A keystore generated
+     * ahead of time, e.g. by {@link SslContextCache#prepare()}, only counts once
+     * {@link #markPaired(File)} was called for it; keystores from before that marker existed
+     * count as paired.
+     */
+    public static boolean isPaired(File keyStoreFile) {
+        return keyStoreFile.exists() && keyStoreFile.length() > 0 && !unpairedMarker(keyStoreFile).exists();
+    }
+
+    /**
+     * Records that a TV accepted the identity in {@code keyStoreFile}.
+     */
+    public static void markPaired(File keyStoreFile) {
+        File marker = unpairedMarker(keyStoreFile);
+        if (marker.exists() && !marker.delete()) {
+            throw new IllegalStateException("Unable to delete " + marker);
+        }
+    }
+
+    private static File unpairedMarker(File keyStoreFile) {
+        return new File(keyStoreFile.getPath() + ".unpaired");
+    }
+
+    /**
+     * Written before a new identity is stored, so a crash in between never leaves an unpaired
+     * keystore that looks paired.
+     */
+    private void markUnpaired() {
+        if (useAndroidKeyStore()) {
+            return;
+        }
+        File marker = unpairedMarker(androidRemoteContext.getKeyStoreFile());
+        try {
+            if (!marker.exists() && !marker.createNewFile()) {
+                throw new IOException("createNewFile failed");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create " + marker, e);
+        }
+    }
+
     public KeyManager[] getKeyManagers() throws GeneralSecurityException {
         KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
         keyManagerFactory.init(this.mKeyStore, "".toCharArray());
@@ -277,6 +325,7 @@ public final class KeyStoreManager {
     public void store() {
         this.mDynamicTrustManager.reloadTrustManager(this.mKeyStore);
         store(this.mKeyStore);
+        SslContextCache.getInstance().invalidate(androidRemoteContext.getKeyStoreFile());
     }
 
     public void storeCertificate(Certificate certificate) {
@@ -26,9 +26,6 @@ public class SSLSocketFactoryWrapper extends SSLSocketFactory {
   public SSLSocketFactoryWrapper(KeyManager[] keyManagers,
       TrustManager[] trustManagers) throws NoSuchAlgorithmException,
       KeyManagementException {
-    java.security.Security.addProvider(
-        new org.bouncycastle.jce.provider.BouncyCastleProvider());
-    
     SSLContext sslcontext = SSLContext.getInstance("TLS");
     sslcontext.init(keyManagers, trustManagers, null);
     mFactory = sslcontext.getSocketFactory();
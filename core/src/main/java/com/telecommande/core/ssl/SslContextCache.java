@@ -0,0 +1,154 @@
+package com.telecommande.core.ssl;
+
+import com.telecommande.core.AndroidRemoteContext;
+
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+
+/**
+ * Keeps one initialized client {@link SSLContext} per identity (keystore file) so reconnects do
+ * not re-read and decrypt the keystore or rebuild the key manager.
+ * <p>
+ * An entry is dropped when {@link KeyStoreManager#store()} rewrites that keystore, and is also
+ * rebuilt if the file's size or modification time no longer match, which covers the app deleting
+ * the keystore to force a fresh pairing.
+ * <p>
+ * Because the context outlives individual connections, so does its client session cache. JSSE
+ * keys that cache by peer host and port, so reconnecting to the same TV resumes the previous TLS
+ * session with an abbreviated handshake; see {@link TlsSessionMetrics}.
+ */
+public final class SslContextCache {
+
+    private static final SslContextCache INSTANCE = new SslContextCache();
+    private static final int SESSION_CACHE_SIZE = 32;
+    private static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+    private static final Executor PREPARE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SslContextPrepare");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mInvalidations = new AtomicLong();
+    private volatile long mLastBuildNanos;
+
+    private SslContextCache() {
+    }
+
+    public static SslContextCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the context for the keystore currently configured in {@link AndroidRemoteContext}.
+     */
+    public SSLContext get() throws GeneralSecurityException {
+        return get(AndroidRemoteContext.getInstance().getKeyStoreFile());
+    }
+
+    /**
+     * Builds the context for the configured keystore on a background thread, generating the
+     * identity first if the keystore is new. Meant to be called at startup so the first connect
+     * finds the context cached; a connect racing it waits for this build instead of generating a
+     * second identity.
+     */
+    public CompletableFuture<SSLContext> prepare() {
+        File keyStoreFile = AndroidRemoteContext.getInstance().getKeyStoreFile();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return get(keyStoreFile);
+            } catch (GeneralSecurityException e) {
+                throw new CompletionException(e);
+            }
+        }, PREPARE_EXECUTOR);
+    }
+
+    public SSLContext get(File keyStoreFile) throws GeneralSecurityException {
+        String identity = keyStoreFile.getAbsolutePath();
+        Entry entry = mEntries.get(identity);
+        if (entry != null && entry.matches(keyStoreFile)) {
+            mHits.incrementAndGet();
+            return entry.mContext;
+        }
+        synchronized (this) {
+            entry = mEntries.get(identity);
+            if (entry != null && entry.matches(keyStoreFile)) {
+                mHits.incrementAndGet();
+                return entry.mContext;
+            }
+            mMisses.incrementAndGet();
+            long start = System.nanoTime();
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(new KeyStoreManager().getKeyManagers(), new TrustManager[]{new DummyTrustManager()}, new SecureRandom());
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            if (sessionContext != null) {
+                sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+                sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            }
+            mEntries.put(identity, new Entry(sslContext, keyStoreFile));
+            mLastBuildNanos = System.nanoTime() - start;
+            return sslContext;
+        }
+    }
+
+    public synchronized void invalidate(File keyStoreFile) {
+        if (mEntries.remove(keyStoreFile.getAbsolutePath()) != null) {
+            mInvalidations.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        mInvalidations.addAndGet(mEntries.size());
+        mEntries.clear();
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    public long getInvalidationCount() {
+        return mInvalidations.get();
+    }
+
+    /**
+     * Time the last miss spent loading the keystore, including generating its identity if it was
+     * new, and initializing the context.
+     */
+    public long getLastBuildNanos() {
+        return mLastBuildNanos;
+    }
+
+    private static final class Entry {
+        private final SSLContext mContext;
+        private final long mLastModified;
+        private final long mLength;
+
+        Entry(SSLContext context, File keyStoreFile) {
+            mContext = context;
+            mLastModified = keyStoreFile.lastModified();
+            mLength = keyStoreFile.length();
+        }
+
+        boolean matches(File keyStoreFile) {
+            return keyStoreFile.lastModified() == mLastModified && keyStoreFile.length() == mLength;
+        }
+    }
+}
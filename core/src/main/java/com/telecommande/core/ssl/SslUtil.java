@@ -6,13 +6,21 @@ import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 import org.bouncycastle.asn1.x509.BasicConstraints;
 import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
 import org.bouncycastle.asn1.x509.KeyUsage;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
-import org.bouncycastle.asn1.x509.X509Extension;
-import org.bouncycastle.x509.X509V1CertificateGenerator;
+import org.bouncycastle.cert.X509v1CertificateBuilder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v1CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -22,7 +30,9 @@ import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
 import java.security.PublicKey;
+import java.security.Security;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.Calendar;
@@ -36,6 +46,33 @@ import javax.security.auth.x500.X500Principal;
 
 public class SslUtil {
 
+	private static final String SIGNATURE_ALGORITHM = "SHA256WithRSAEncryption";
+
+	/**
+	 * Resolved the first time a certificate is signed. Reuses the BouncyCastle provider the app
+	 * installed, and otherwise registers one, unless the platform's trimmed-down "BC" already
+	 * holds the name; certificates are signed with this instance either way.
+	 */
+	private static final class BouncyCastle {
+		static final Provider PROVIDER;
+
+		static {
+			Provider provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+			if (!(provider instanceof BouncyCastleProvider)) {
+				boolean isNameTaken = provider != null;
+				provider = new BouncyCastleProvider();
+				if (!isNameTaken) {
+					Security.addProvider(provider);
+				}
+			}
+			PROVIDER = provider;
+		}
+	}
+
+	private static Provider getBouncyCastleProvider() {
+		return BouncyCastle.PROVIDER;
+	}
+
 	public static KeyPair generateRsaKeyPair() throws NoSuchAlgorithmException {
 		KeyPairGenerator kg = KeyPairGenerator.getInstance("RSA");
 		KeyPair kp = kg.generateKeyPair();
@@ -49,12 +86,8 @@ public class SslUtil {
 		return ks;
 	}
 
-	@SuppressWarnings("deprecation")
 	public static X509Certificate generateX509V1Certificate(KeyPair pair,
 			String name) throws GeneralSecurityException {
-		java.security.Security
-				.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
-
 		Calendar calendar = Calendar.getInstance();
 		calendar.set(2009, 0, 1);
 		Date startDate = new Date(calendar.getTimeInMillis());
@@ -64,60 +97,61 @@ public class SslUtil {
 		BigInteger serialNumber = BigInteger.valueOf(Math.abs(System
 				.currentTimeMillis()));
 
-		X509V1CertificateGenerator certGen = new X509V1CertificateGenerator();
 		X500Principal dnName = new X500Principal(name);
-		certGen.setSerialNumber(serialNumber);
-		certGen.setIssuerDN(dnName);
-		certGen.setNotBefore(startDate);
-		certGen.setNotAfter(expiryDate);
-		certGen.setSubjectDN(dnName);
-		certGen.setPublicKey(pair.getPublic());
-		certGen.setSignatureAlgorithm("SHA256WithRSAEncryption");
-
-		X509Certificate cert = certGen.generate(pair.getPrivate(), "BC");
-		return cert;
+		X509v1CertificateBuilder certBuilder = new JcaX509v1CertificateBuilder(
+				dnName, serialNumber, startDate, expiryDate, dnName,
+				pair.getPublic());
+
+		return new JcaX509CertificateConverter().getCertificate(certBuilder
+				.build(createSigner(pair)));
 	}
 
-	@SuppressWarnings("deprecation")
 	public static X509Certificate generateX509V3Certificate(KeyPair pair,
 			String name, Date notBefore, Date notAfter, BigInteger serialNumber)
 			throws GeneralSecurityException {
-		java.security.Security
-				.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
-
-		org.bouncycastle.x509.X509V3CertificateGenerator certGen = new org.bouncycastle.x509.X509V3CertificateGenerator();
 		X500Name dnName = new org.bouncycastle.asn1.x500.X500Name(name);
 		X500Principal principal = new X500Principal(name);
 
-		certGen.setSerialNumber(serialNumber);
-		certGen.setIssuerDN(principal);
-		certGen.setSubjectDN(principal);
-		certGen.setNotBefore(notBefore);
-		certGen.setNotAfter(notAfter);
-		certGen.setPublicKey(pair.getPublic());
-		certGen.setSignatureAlgorithm("SHA256WithRSAEncryption");
+		X509v3CertificateBuilder certBuilder = new JcaX509v3CertificateBuilder(
+				principal, serialNumber, notBefore, notAfter, principal,
+				pair.getPublic());
 
-		certGen.addExtension(X509Extension.basicConstraints, true,
-				new BasicConstraints(false));
+		try {
+			certBuilder.addExtension(Extension.basicConstraints, true,
+					new BasicConstraints(false));
+
+			certBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(
+					KeyUsage.digitalSignature | KeyUsage.keyEncipherment
+							| KeyUsage.keyCertSign));
+			certBuilder.addExtension(Extension.extendedKeyUsage, true,
+					new ExtendedKeyUsage(KeyPurposeId.id_kp_serverAuth));
 
-		certGen.addExtension(X509Extension.keyUsage, true, new KeyUsage(
-				KeyUsage.digitalSignature | KeyUsage.keyEncipherment
-						| KeyUsage.keyCertSign));
-		certGen.addExtension(X509Extension.extendedKeyUsage, true,
-				new ExtendedKeyUsage(KeyPurposeId.id_kp_serverAuth));
+			AuthorityKeyIdentifier authIdentifier = createAuthorityKeyIdentifier(
+					pair.getPublic(), dnName, serialNumber);
 
-		AuthorityKeyIdentifier authIdentifier = createAuthorityKeyIdentifier(
-				pair.getPublic(), dnName, serialNumber);
+			certBuilder.addExtension(Extension.authorityKeyIdentifier, true,
+					authIdentifier);
 
-		certGen.addExtension(X509Extension.authorityKeyIdentifier, true,
-				authIdentifier);
+			certBuilder.addExtension(Extension.subjectAlternativeName, false,
+					new GeneralNames(new GeneralName(GeneralName.rfc822Name,
+							"googletv@test.test")));
+		} catch (IOException e) {
+			throw new GeneralSecurityException("Unable to encode certificate extension", e);
+		}
 
-		certGen.addExtension(X509Extension.subjectAlternativeName, false,
-				new GeneralNames(new GeneralName(GeneralName.rfc822Name,
-						"googletv@test.test")));
+		return new JcaX509CertificateConverter().getCertificate(certBuilder
+				.build(createSigner(pair)));
+	}
 
-		X509Certificate cert = certGen.generate(pair.getPrivate(), "BC");
-		return cert;
+	private static ContentSigner createSigner(KeyPair pair)
+			throws GeneralSecurityException {
+		try {
+			return new JcaContentSignerBuilder(SIGNATURE_ALGORITHM)
+					.setProvider(getBouncyCastleProvider())
+					.build(pair.getPrivate());
+		} catch (OperatorCreationException e) {
+			throw new GeneralSecurityException("Unable to create certificate signer", e);
+		}
 	}
 
 	private static AuthorityKeyIdentifier createAuthorityKeyIdentifier(
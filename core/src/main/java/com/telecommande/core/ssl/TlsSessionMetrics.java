@@ -0,0 +1,68 @@
+package com.telecommande.core.ssl;
+
+import com.telecommande.core.metrics.LatencyHistogram;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Connect-to-handshake-complete latency, split into full and abbreviated (resumed) handshakes.
+ * <p>
+ * A handshake counts as resumed when the negotiated session was created before the connect
+ * started. That holds for both TLS 1.2 resumption, which keeps the session id, and TLS 1.3 PSK
+ * resumption, which hands out a new id but keeps the original creation time.
+ */
+public final class TlsSessionMetrics {
+
+    private static final TlsSessionMetrics INSTANCE = new TlsSessionMetrics();
+
+    private final LatencyHistogram mFullHandshakes = new LatencyHistogram();
+    private final LatencyHistogram mResumedHandshakes = new LatencyHistogram();
+
+    private TlsSessionMetrics() {
+    }
+
+    public static TlsSessionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param connectStartMillis wall-clock time the connect began
+     * @param durationNanos      time from connect start until the handshake completed
+     * @return whether the handshake resumed an earlier session
+     */
+    public boolean record(SSLSession session, long connectStartMillis, long durationNanos) {
+        boolean resumed = isResumed(session, connectStartMillis);
+        (resumed ? mResumedHandshakes : mFullHandshakes).record(durationNanos);
+        return resumed;
+    }
+
+    public static boolean isResumed(SSLSession session, long connectStartMillis) {
+        return session != null && session.isValid() && session.getCreationTime() < connectStartMillis;
+    }
+
+    public LatencyHistogram getFullHandshakes() {
+        return mFullHandshakes;
+    }
+
+    public LatencyHistogram getResumedHandshakes() {
+        return mResumedHandshakes;
+    }
+
+    public long getFullCount() {
+        return mFullHandshakes.getCount();
+    }
+
+    public long getResumedCount() {
+        return mResumedHandshakes.getCount();
+    }
+
+    public void reset() {
+        mFullHandshakes.reset();
+        mResumedHandshakes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "full[" + mFullHandshakes + "] resumed[" + mResumedHandshakes + "]";
+    }
+}
@@ -0,0 +1,59 @@
+package com.telecommande.core.wire;
+
+import com.telecommande.core.exception.SessionTimeoutException;
+import com.telecommande.core.metrics.TimeoutCounters;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Connect and TLS handshake steps for the blocking-socket sessions, each bounded by a deadline.
+ */
+public final class BlockingConnector {
+
+    private BlockingConnector() {
+    }
+
+    public static Socket connect(InetSocketAddress address, int timeoutMillis) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setKeepAlive(true);
+            socket.setTcpNoDelay(true);
+            socket.connect(address, timeoutMillis);
+            return socket;
+        } catch (SocketTimeoutException e) {
+            socket.close();
+            throw TimeoutCounters.count(new SessionTimeoutException(SessionTimeoutException.Phase.CONNECT,
+                    "Connect to " + address + " timed out after " + timeoutMillis + " ms"));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Layers a client TLS socket over {@code socket} and completes the handshake. Passing the
+     * original host and port keeps them as the key for session resumption.
+     */
+    public static SSLSocket startTls(SSLContext sslContext, Socket socket, String host, int port, int timeoutMillis) throws IOException {
+        SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, host, port, true);
+        try {
+            sslSocket.setUseClientMode(true);
+            sslSocket.setSoTimeout(timeoutMillis);
+            sslSocket.startHandshake();
+            sslSocket.setSoTimeout(0);
+            return sslSocket;
+        } catch (SocketTimeoutException e) {
+            sslSocket.close();
+            throw TimeoutCounters.count(new SessionTimeoutException(SessionTimeoutException.Phase.HANDSHAKE,
+                    "TLS handshake with " + host + ":" + port + " timed out after " + timeoutMillis + " ms"));
+        } catch (IOException e) {
+            sslSocket.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.telecommande.core.wire;
+
+import com.google.protobuf.CodedInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a byte stream into varint32 length-delimited frames without allocating per frame.
+ * <p>
+ * Incoming bytes are appended to one reusable buffer; unread bytes are moved back to the start
+ * only when the tail runs out of room, so a frame is always contiguous and can be handed to the
+ * listener in place. This is deliberately not a ring buffer: a read that ends mid-frame costs
+ * nothing, the buffer is rewound for free whenever it drains, and a move, when the tail does run
+ * out, carries less than one frame. A ring avoids the move but must copy every frame that wraps
+ * to hand it out contiguously, and masks every index; on frames that straddle reads it was
+ * slower, not faster. Listeners typically wrap the slice with
+ * {@link CodedInputStream#newInstance(byte[], int, int)} and must not keep a reference to the
+ * array once {@link FrameListener#onFrame(byte[], int, int)} returns. Not thread-safe.
+ */
+public final class FrameDecoder {
+
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 8192;
+
+    private static final int MAX_VARINT32_BYTES = 5;
+
+    public interface FrameListener {
+        void onFrame(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final int mMaxFrameLength;
+    private byte[] mBuffer;
+    private int mReadIndex;
+    private int mWriteIndex;
+    private long mCompactedBytes;
+
+    public FrameDecoder() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public FrameDecoder(int maxFrameLength) {
+        mMaxFrameLength = maxFrameLength;
+        mBuffer = new byte[Math.min(maxFrameLength + MAX_VARINT32_BYTES, 1024)];
+    }
+
+    /**
+     * Consumes all of {@code source} and delivers every frame it completes.
+     */
+    public void feed(ByteBuffer source, FrameListener listener) throws IOException {
+        while (source.hasRemaining()) {
+            int count = Math.min(source.remaining(), ensureWritable(source.remaining()));
+            source.get(mBuffer, mWriteIndex, count);
+            mWriteIndex += count;
+            drain(listener);
+        }
+    }
+
+    public void feed(byte[] source, int offset, int length, FrameListener listener) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, ensureWritable(length));
+            System.arraycopy(source, offset, mBuffer, mWriteIndex, count);
+            mWriteIndex += count;
+            offset += count;
+            length -= count;
+            drain(listener);
+        }
+    }
+
+    /**
+     * Number of buffered bytes belonging to a frame that is not complete yet.
+     */
+    public int pendingBytes() {
+        return mWriteIndex - mReadIndex;
+    }
+
+    /**
+     * Bytes moved back to the start of the buffer so far, to make room at the tail.
+     */
+    public long compactedBytes() {
+        return mCompactedBytes;
+    }
+
+    public void reset() {
+        mReadIndex = 0;
+        mWriteIndex = 0;
+    }
+
+    private void drain(FrameListener listener) throws IOException {
+        while (mReadIndex < mWriteIndex) {
+            int position = mReadIndex;
+            int length = 0;
+            int shift = 0;
+            boolean complete = false;
+            while (position < mWriteIndex) {
+                byte b = mBuffer[position++];
+                length |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    complete = true;
+                    break;
+                }
+                shift += 7;
+                if (shift >= 7 * MAX_VARINT32_BYTES) {
+                    throw new IOException("Malformed frame length varint");
+                }
+            }
+            if (!complete) {
+                return;
+            }
+            if (length < 0 || length > mMaxFrameLength) {
+                throw new IOException("Frame length " + (length & 0xffffffffL) + " exceeds " + mMaxFrameLength);
+            }
+            if (mWriteIndex - position < length) {
+                return;
+            }
+            mReadIndex = position + length;
+            listener.onFrame(mBuffer, position, length);
+        }
+        mReadIndex = 0;
+        mWriteIndex = 0;
+    }
+
+    /**
+     * Makes room for up to {@code wanted} more bytes and returns how many fit.
+     */
+    private int ensureWritable(int wanted) {
+        if (mBuffer.length - mWriteIndex >= wanted) {
+            return wanted;
+        }
+        if (mReadIndex > 0) {
+            int pending = mWriteIndex - mReadIndex;
+            mCompactedBytes += pending;
+            System.arraycopy(mBuffer, mReadIndex, mBuffer, 0, pending);
+            mReadIndex = 0;
+            mWriteIndex = pending;
+        }
+        int limit = mMaxFrameLength + MAX_VARINT32_BYTES;
+        if (mBuffer.length - mWriteIndex < wanted && mBuffer.length < limit) {
+            byte[] grown = new byte[Math.min(limit, Math.max(mBuffer.length * 2, mWriteIndex + wanted))];
+            System.arraycopy(mBuffer, 0, grown, 0, mWriteIndex);
+            mBuffer = grown;
+        }
+        return Math.min(wanted, mBuffer.length - mWriteIndex);
+    }
+}
@@ -0,0 +1,99 @@
+package com.telecommande.core.wire;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes protobuf messages as varint32 length-delimited frames, the framing used on both the
+ * pairing (6467) and remote (6466) ports.
+ * <p>
+ * The static {@link #encode(MessageLite)} allocates exactly one array per frame and serializes
+ * straight into it. An instance keeps a reusable output buffer for callers that send from a
+ * single thread and can write {@link #getBuffer()} directly; instances are not thread-safe.
+ */
+public final class FrameEncoder {
+
+    private byte[] mBuffer;
+
+    public FrameEncoder() {
+        this(256);
+    }
+
+    public FrameEncoder(int initialCapacity) {
+        mBuffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Returns a new, exactly sized array holding the length prefix followed by the message.
+     */
+    public static byte[] encode(MessageLite message) {
+        int size = message.getSerializedSize();
+        byte[] frame = new byte[CodedOutputStream.computeUInt32SizeNoTag(size) + size];
+        CodedOutputStream output = CodedOutputStream.newInstance(frame);
+        try {
+            output.writeUInt32NoTag(size);
+            message.writeTo(output);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("Serializing to a byte array threw an IOException", e);
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the size of the frame {@link #encode(MessageLite)} would produce.
+     */
+    public static int frameSize(MessageLite message) {
+        int size = message.getSerializedSize();
+        return CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+
+    /**
+     * Serializes {@code message} into the reusable buffer and returns the frame length. The frame
+     * occupies {@code getBuffer()[0, length)} until the next call.
+     */
+    public int encodeToBuffer(MessageLite message) {
+        int size = message.getSerializedSize();
+        int frameLength = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+        if (frameLength > mBuffer.length) {
+            mBuffer = new byte[Math.max(frameLength, mBuffer.length * 2)];
+        }
+        CodedOutputStream output = CodedOutputStream.newInstance(mBuffer, 0, frameLength);
+        try {
+            output.writeUInt32NoTag(size);
+            message.writeTo(output);
+        } catch (IOException e) {
+            throw new IllegalStateException("Serializing to a byte array threw an IOException", e);
+        }
+        return frameLength;
+    }
+
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Appends one frame to {@code target}, advancing its position.
+     *
+     * @throws BufferOverflowException if {@code target} has less than
+     *                                 {@link #frameSize(MessageLite)} bytes remaining
+     */
+    public static void encode(MessageLite message, ByteBuffer target) {
+        int size = message.getSerializedSize();
+        if (target.remaining() < CodedOutputStream.computeUInt32SizeNoTag(size) + size) {
+            throw new BufferOverflowException();
+        }
+        CodedOutputStream output = CodedOutputStream.newInstance(target);
+        try {
+            output.writeUInt32NoTag(size);
+            message.writeTo(output);
+            output.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Serializing to a ByteBuffer threw an IOException", e);
+        }
+    }
+}
@@ -1,25 +1,20 @@
 package com.telecommande.core.wire;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.nio.ByteBuffer;
-import java.util.Arrays;
+import com.google.protobuf.MessageLite;
 
+/**
+ * Base of the pairing and remote encoders. Managers hold no state: every frame is serialized into
+ * its own exactly sized array, so one instance can be shared by any number of threads and
+ * sessions.
+ */
 public abstract class MessageManager {
 
-    private final Logger logger = LoggerFactory.getLogger(MessageManager.class);
-    public ByteBuffer mPacketBuffer = ByteBuffer.allocate(65539);
-
-    public byte[] addLengthAndCreate(byte[] message) {
-        int length = message.length;
-        mPacketBuffer.put((byte) length).put(message);
-        byte[] buf = new byte[mPacketBuffer.position()];
-        System.arraycopy(mPacketBuffer.array(), mPacketBuffer.arrayOffset(), buf, 0, mPacketBuffer.position());
-        mPacketBuffer.clear();
-        logger.debug("Sending bytes {}", Arrays.toString(buf));
-        return buf;
+    /**
+     * Serializes {@code message} straight into an exactly sized, varint32 length-prefixed frame.
+     */
+    protected byte[] createFrame(MessageLite message) {
+        byte[] frame = FrameEncoder.encode(message);
+        WireTracing.traceFrame(WireTracer.Direction.OUTBOUND, frame);
+        return frame;
     }
-
-
 }
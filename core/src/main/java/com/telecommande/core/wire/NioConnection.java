@@ -0,0 +1,465 @@
+package com.telecommande.core.wire;
+
+import com.telecommande.core.exception.SessionTimeoutException;
+import com.telecommande.core.metrics.TimeoutCounters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One TLS connection driven by a {@link NioTransport} selector thread.
+ * <p>
+ * All engine and buffer state is only touched on the selector thread; {@link #write(byte[])},
+ * {@link #send(byte[])} and {@link #close()} may be called from any thread, including from a
+ * receiver callback. Frames queued while a write is in progress go out in one TLS record.
+ */
+public class NioConnection {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final Logger logger = LoggerFactory.getLogger(NioConnection.class);
+    private final NioTransport mTransport;
+    private final SocketChannel mChannel;
+    private final SSLEngine mEngine;
+    private final Queue<PendingWrite> mPendingWrites = new ConcurrentLinkedQueue<>();
+    private final List<PendingWrite> mBatch = new ArrayList<>();
+    private final CompletableFuture<Void> mHandshakeFuture = new CompletableFuture<>();
+    private final CompletableFuture<Void> mCloseFuture = new CompletableFuture<>();
+    private final OutputStream mOutputStream = new ConnectionOutputStream();
+    private final FrameDecoder mFrameDecoder = new FrameDecoder();
+    private final FrameDecoder.FrameListener mFrameListener = this::onFrame;
+
+    private PacketReceiver mReceiver;
+    private SelectionKey mKey;
+    private ByteBuffer mNetIn;
+    private ByteBuffer mNetOut;
+    private ByteBuffer mAppIn;
+    private volatile boolean isClosed = false;
+    private volatile long mConnectedNanos;
+
+    NioConnection(NioTransport transport, SocketChannel channel, SSLEngine engine) {
+        mTransport = transport;
+        mChannel = channel;
+        mEngine = engine;
+        SSLSession session = engine.getSession();
+        mNetIn = ByteBuffer.allocate(session.getPacketBufferSize());
+        mNetOut = ByteBuffer.allocate(session.getPacketBufferSize());
+        mAppIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+    }
+
+    /**
+     * Registers the connection with the selector; packets are delivered to {@code receiver} on
+     * the selector thread from then on.
+     */
+    public void start(PacketReceiver receiver) {
+        if (receiver == null) {
+            throw new IllegalArgumentException("PacketReceiver cannot be null");
+        }
+        mReceiver = receiver;
+        mTransport.register(this, mChannel);
+    }
+
+    /**
+     * Blocks until the TLS handshake completes, rethrowing its failure.
+     */
+    public void awaitHandshake() throws IOException, InterruptedException {
+        try {
+            mHandshakeFuture.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Like {@link #awaitHandshake()} but closes the connection and throws a
+     * {@link SessionTimeoutException} if the TCP connect and TLS handshake did not finish within
+     * {@code timeoutMillis}.
+     */
+    public void awaitHandshake(long timeoutMillis) throws IOException, InterruptedException {
+        try {
+            mHandshakeFuture.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            boolean connected = mConnectedNanos != 0;
+            close();
+            throw TimeoutCounters.count(new SessionTimeoutException(
+                    connected ? SessionTimeoutException.Phase.HANDSHAKE : SessionTimeoutException.Phase.CONNECT,
+                    (connected ? "TLS handshake" : "Connect") + " timed out after " + timeoutMillis + " ms"));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public CompletableFuture<Void> getHandshakeFuture() {
+        return mHandshakeFuture;
+    }
+
+    public CompletableFuture<Void> getCloseFuture() {
+        return mCloseFuture;
+    }
+
+    /**
+     * {@link System#nanoTime()} at which the TCP connect completed, or 0 if it has not yet.
+     */
+    public long getConnectedNanos() {
+        return mConnectedNanos;
+    }
+
+    public SSLSession getSession() {
+        return mEngine.getSession();
+    }
+
+    public OutputStream getOutputStream() {
+        return mOutputStream;
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Whether the caller runs on the selector thread, which must never wait for this connection's
+     * writes to drain.
+     */
+    public boolean isSelectorThread() {
+        return mTransport.isSelectorThread();
+    }
+
+    /**
+     * Queues an already framed packet for sending. The array must not be modified afterwards.
+     */
+    public void write(byte[] frame) throws IOException {
+        write(frame, 0, frame.length);
+    }
+
+    public void write(byte[] frame, int offset, int length) throws IOException {
+        if (isClosed) {
+            throw new IOException("Connection closed");
+        }
+        enqueue(new PendingWrite(ByteBuffer.wrap(frame, offset, length), null));
+    }
+
+    /**
+     * Like {@link #write(byte[])} but never throws; the returned future completes once the frame
+     * has been encrypted and handed to the socket, or exceptionally if the connection closed first.
+     */
+    public CompletableFuture<Void> send(byte[] frame) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (isClosed) {
+            future.completeExceptionally(new IOException("Connection closed"));
+            return future;
+        }
+        enqueue(new PendingWrite(ByteBuffer.wrap(frame), future));
+        return future;
+    }
+
+    private void enqueue(PendingWrite write) {
+        mPendingWrites.add(write);
+        if (isClosed) {
+            // Raced with closeInternal(), which may already have failed the queue.
+            failPendingWrites(new IOException("Connection closed"));
+            return;
+        }
+        mTransport.post(this::onWriteRequested);
+    }
+
+    public void close() {
+        mTransport.post(() -> closeInternal(null));
+    }
+
+    void onRegistered(SelectionKey key) {
+        mKey = key;
+        if ((key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+            onConnected();
+        }
+    }
+
+    void onSelected(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                if (!mChannel.finishConnect()) {
+                    return;
+                }
+                onConnected();
+                return;
+            }
+            if (key.isReadable()) {
+                int read = mChannel.read(mNetIn);
+                if (read < 0) {
+                    closeInternal(new IOException("Stream closed by peer"));
+                    return;
+                }
+            }
+            pump();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    void fail(Exception e) {
+        if (!isClosed) {
+            logger.debug("NioConnection failed: {}", e.getMessage());
+            WireTracing.error("NioConnection failed: " + e);
+        }
+        closeInternal(e instanceof IOException ? (IOException) e : new IOException(e));
+    }
+
+    private void onConnected() {
+        mConnectedNanos = System.nanoTime();
+        mKey.interestOps(SelectionKey.OP_READ);
+        try {
+            mEngine.beginHandshake();
+            pump();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void onWriteRequested() {
+        if (isClosed || mKey == null) {
+            return;
+        }
+        try {
+            pump();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Advances the engine as far as the available input and socket buffer space allow.
+     */
+    private void pump() throws IOException {
+        while (!isClosed) {
+            SSLEngineResult.HandshakeStatus status = mEngine.getHandshakeStatus();
+            if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                Runnable task;
+                while ((task = mEngine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+            } else if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                if (!wrap(EMPTY)) {
+                    return;
+                }
+            } else if (status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                if (!unwrap()) {
+                    return;
+                }
+            } else {
+                if (!mHandshakeFuture.isDone()) {
+                    mHandshakeFuture.complete(null);
+                }
+                if (!flushPendingWrites()) {
+                    return;
+                }
+                if (!unwrap()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Wraps everything queued so far with one gathering {@link SSLEngine#wrap(ByteBuffer[], ByteBuffer)},
+     * so a burst of small frames costs one record instead of one each.
+     */
+    private boolean flushPendingWrites() throws IOException {
+        while (!mPendingWrites.isEmpty()) {
+            mBatch.clear();
+            for (PendingWrite pending : mPendingWrites) {
+                mBatch.add(pending);
+            }
+            ByteBuffer[] sources = new ByteBuffer[mBatch.size()];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = mBatch.get(i).mBuffer;
+            }
+            while (sources[sources.length - 1].hasRemaining()) {
+                if (!wrap(sources)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < sources.length; i++) {
+                PendingWrite written = mPendingWrites.poll();
+                if (written.mFuture != null) {
+                    written.mFuture.complete(null);
+                }
+            }
+            mBatch.clear();
+        }
+        return true;
+    }
+
+    private boolean wrap(ByteBuffer src) throws IOException {
+        return wrap(new ByteBuffer[]{src});
+    }
+
+    private boolean wrap(ByteBuffer[] sources) throws IOException {
+        if (mNetOut.position() > 0 && !flushNetOut()) {
+            return false;
+        }
+        SSLEngineResult result = mEngine.wrap(sources, mNetOut);
+        switch (result.getStatus()) {
+            case BUFFER_OVERFLOW:
+                mNetOut = enlarge(mNetOut, mEngine.getSession().getPacketBufferSize());
+                return true;
+            case CLOSED:
+                flushNetOut();
+                closeInternal(new IOException("SSLEngine closed"));
+                return false;
+            default:
+                return flushNetOut();
+        }
+    }
+
+    private boolean unwrap() throws IOException {
+        mNetIn.flip();
+        SSLEngineResult result;
+        try {
+            result = mEngine.unwrap(mNetIn, mAppIn);
+        } finally {
+            mNetIn.compact();
+        }
+        switch (result.getStatus()) {
+            case BUFFER_OVERFLOW:
+                deliverApplicationData();
+                if (mAppIn.position() > 0) {
+                    mAppIn = enlarge(mAppIn, mEngine.getSession().getApplicationBufferSize());
+                }
+                return true;
+            case BUFFER_UNDERFLOW:
+                if (!mNetIn.hasRemaining()) {
+                    mNetIn = enlarge(mNetIn, mEngine.getSession().getPacketBufferSize());
+                }
+                return false;
+            case CLOSED:
+                closeInternal(new IOException("Stream closed by peer"));
+                return false;
+            default:
+                deliverApplicationData();
+                return result.bytesConsumed() > 0 || result.bytesProduced() > 0
+                        || result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK
+                        || result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP;
+        }
+    }
+
+    private void deliverApplicationData() throws IOException {
+        mAppIn.flip();
+        mFrameDecoder.feed(mAppIn, mFrameListener);
+        mAppIn.clear();
+    }
+
+    private void onFrame(byte[] buffer, int offset, int length) {
+        WireTracing.trace(WireTracer.Direction.INBOUND, buffer, offset, length);
+        mReceiver.messageBufferReceived(buffer, offset, length);
+    }
+
+    private boolean flushNetOut() throws IOException {
+        mNetOut.flip();
+        try {
+            mChannel.write(mNetOut);
+            boolean flushed = !mNetOut.hasRemaining();
+            int ops = mKey.interestOps();
+            mKey.interestOps(flushed ? ops & ~SelectionKey.OP_WRITE : ops | SelectionKey.OP_WRITE);
+            return flushed;
+        } finally {
+            mNetOut.compact();
+        }
+    }
+
+    private void closeInternal(IOException cause) {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (cause == null) {
+            mEngine.closeOutbound();
+            try {
+                wrap(EMPTY);
+            } catch (IOException | RuntimeException ignored) {
+            }
+        }
+        if (mKey != null) {
+            mKey.cancel();
+        }
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            logger.error("IOException while closing NioConnection channel: " + e.getMessage(), e);
+        }
+        if (!mHandshakeFuture.isDone()) {
+            mHandshakeFuture.completeExceptionally(cause != null ? cause : new SSLException("Connection closed during handshake"));
+        }
+        failPendingWrites(cause != null ? cause : new IOException("Connection closed"));
+        mCloseFuture.complete(null);
+    }
+
+    private void failPendingWrites(IOException cause) {
+        PendingWrite pending;
+        while ((pending = mPendingWrites.poll()) != null) {
+            if (pending.mFuture != null) {
+                pending.mFuture.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int sessionSize) {
+        ByteBuffer enlarged = ByteBuffer.allocate(Math.max(sessionSize, buffer.capacity() * 2));
+        buffer.flip();
+        enlarged.put(buffer);
+        return enlarged;
+    }
+
+    private static final class PendingWrite {
+        private final ByteBuffer mBuffer;
+        private final CompletableFuture<Void> mFuture;
+
+        PendingWrite(ByteBuffer buffer, CompletableFuture<Void> future) {
+            mBuffer = buffer;
+            mFuture = future;
+        }
+    }
+
+    private class ConnectionOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            byte[] copy = new byte[len];
+            System.arraycopy(b, off, copy, 0, len);
+            NioConnection.this.write(copy);
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+}
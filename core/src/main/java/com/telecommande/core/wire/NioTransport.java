@@ -0,0 +1,172 @@
+package com.telecommande.core.wire;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking transport multiplexing any number of TLS connections on a single selector thread.
+ * <p>
+ * Each {@link NioConnection} drives its own {@link SSLEngine} and hands de-framed packets to a
+ * {@link PacketReceiver}, so {@code RemotePacketParser} and {@code PairingPacketParser} work
+ * unchanged whether they are fed by a blocking socket or by this loop. One instance can be shared
+ * by every remote and pairing session of the process.
+ */
+public class NioTransport implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(NioTransport.class);
+    private final Selector mSelector;
+    private final Thread mSelectorThread;
+    private final Queue<Runnable> mPendingTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean isRunning = true;
+
+    public NioTransport() throws IOException {
+        this("NioTransport");
+    }
+
+    public NioTransport(String threadName) throws IOException {
+        mSelector = Selector.open();
+        mSelectorThread = new Thread(this::runLoop, threadName);
+        mSelectorThread.setDaemon(true);
+        mSelectorThread.start();
+    }
+
+    /**
+     * Starts a non-blocking TCP connect to {@code host:port}. The returned connection does not
+     * read anything until {@link NioConnection#start(PacketReceiver)} is called.
+     * <p>
+     * Resolves {@code host} on the calling thread, so never call it from the selector thread.
+     */
+    public NioConnection open(String host, int port, SSLContext sslContext) throws IOException {
+        return open(new InetSocketAddress(host, port), host, port, sslContext);
+    }
+
+    /**
+     * Like {@link #open(String, int, SSLContext)} for an already resolved address; {@code host}
+     * and {@code port} still key the TLS session cache.
+     */
+    public NioConnection open(InetSocketAddress address, String host, int port, SSLContext sslContext) throws IOException {
+        if (!isRunning) {
+            throw new IOException("NioTransport is closed");
+        }
+        SSLEngine engine = sslContext.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (RuntimeException e) {
+            // e.g. UnresolvedAddressException for a host that does not resolve
+            channel.close();
+            throw new IOException("Cannot connect to " + address, e);
+        }
+        return new NioConnection(this, channel, engine);
+    }
+
+    void register(NioConnection connection, SocketChannel channel) {
+        execute(() -> {
+            try {
+                int ops = channel.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ;
+                SelectionKey key = channel.register(mSelector, ops, connection);
+                connection.onRegistered(key);
+            } catch (IOException | RuntimeException e) {
+                connection.fail(e);
+            }
+        });
+    }
+
+    /**
+     * Runs {@code task} on the selector thread, immediately if already on it.
+     */
+    void execute(Runnable task) {
+        if (Thread.currentThread() == mSelectorThread) {
+            task.run();
+            return;
+        }
+        mPendingTasks.add(task);
+        mSelector.wakeup();
+    }
+
+    /**
+     * Queues {@code task} for the next selector iteration, even when called from the selector
+     * thread, so callbacks never re-enter a connection mid-read.
+     */
+    void post(Runnable task) {
+        mPendingTasks.add(task);
+        mSelector.wakeup();
+    }
+
+    boolean isSelectorThread() {
+        return Thread.currentThread() == mSelectorThread;
+    }
+
+    private void runLoop() {
+        logger.debug("{}: selector loop started.", mSelectorThread.getName());
+        while (isRunning) {
+            try {
+                mSelector.select();
+                Runnable task;
+                while ((task = mPendingTasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("{}: task failed: {}", mSelectorThread.getName(), e.getMessage(), e);
+                    }
+                }
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isValid()) {
+                            connection.onSelected(key);
+                        }
+                    } catch (RuntimeException e) {
+                        // e.g. a receiver callback that threw; only this connection is affected
+                        connection.fail(e);
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                logger.error("{}: selector failure: {}", mSelectorThread.getName(), e.getMessage(), e);
+            }
+        }
+        for (SelectionKey key : new ArrayList<>(mSelector.keys())) {
+            ((NioConnection) key.attachment()).fail(new IOException("NioTransport closed"));
+        }
+        try {
+            mSelector.close();
+        } catch (IOException e) {
+            logger.error("IOException while closing selector: " + e.getMessage(), e);
+        }
+        logger.debug("{}: selector loop finished.", mSelectorThread.getName());
+    }
+
+    @Override
+    public void close() {
+        isRunning = false;
+        mSelector.wakeup();
+    }
+}
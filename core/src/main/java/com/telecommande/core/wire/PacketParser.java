@@ -1,13 +1,20 @@
 package com.telecommande.core.wire;
 
+import com.google.protobuf.CodedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
 import java.io.InputStream;
 
-public abstract class PacketParser extends Thread {
+public abstract class PacketParser extends Thread implements PacketReceiver {
+    private final Logger logger = LoggerFactory.getLogger(PacketParser.class);
     private final InputStream mInputStream;
     private volatile boolean isAbort = false;
 
-    private static final int MAX_EXPECTED_PACKET_LENGTH = 8192;
+    private static final int MAX_EXPECTED_PACKET_LENGTH = FrameDecoder.DEFAULT_MAX_FRAME_LENGTH;
+
+    private byte[] mPacketBuffer = new byte[256];
 
     public PacketParser(InputStream inputStream) {
         if (inputStream == null) {
@@ -16,39 +23,44 @@ public abstract class PacketParser extends Thread {
         mInputStream = inputStream;
     }
 
+    /**
+     * Creates a parser that is fed by {@link NioTransport} instead of its own reader thread.
+     * Such a parser must never be started.
+     */
+    protected PacketParser() {
+        mInputStream = null;
+    }
+
     @Override
     public void run() {
-        System.out.println(getName() + ": Starting packet parsing loop.");
+        logger.debug("{}: Starting packet parsing loop.", getName());
         int packetLength;
         int totalBytesReadForPacket;
 
         while (!isAbort) {
             try {
-                System.out.println(getName() + ": Attempting to read packet length (1 byte)...");
-                packetLength = mInputStream.read();
+                int firstByte = mInputStream.read();
 
-                if (packetLength == -1) {
-                    System.out.println(getName() + ": Stream closed (returned -1) while reading packet length. Stopping.");
+                if (firstByte == -1) {
+                    logger.debug("{}: Stream closed (returned -1) while reading packet length. Stopping.", getName());
                     isAbort = true;
                     continue;
                 }
 
-                System.out.println(getName() + ": Received raw packet length byte: " + packetLength);
+                packetLength = CodedInputStream.readRawVarint32(firstByte, mInputStream);
 
-                if (packetLength > MAX_EXPECTED_PACKET_LENGTH) {
-                    System.err.println(getName() + ": Error - Packet length " + packetLength + " exceeds MAX_EXPECTED_PACKET_LENGTH " + MAX_EXPECTED_PACKET_LENGTH + ". Corrupted data likely. Stopping.");
+                if (packetLength < 0 || packetLength > MAX_EXPECTED_PACKET_LENGTH) {
+                    String reason = getName() + ": Packet length " + packetLength + " exceeds MAX_EXPECTED_PACKET_LENGTH " + MAX_EXPECTED_PACKET_LENGTH + ". Corrupted data likely. Stopping.";
+                    logger.error(reason);
+                    WireTracing.error(reason);
                     isAbort = true;
                     continue;
                 }
 
-                if (packetLength == 0) {
-                    System.out.println(getName() + ": Received packet length 0. Processing as empty message.");
-                    messageBufferReceived(new byte[0]);
-                    continue;
+                if (packetLength > mPacketBuffer.length) {
+                    mPacketBuffer = new byte[Math.max(packetLength, mPacketBuffer.length * 2)];
                 }
-
-                System.out.println(getName() + ": Expecting packet of size: " + packetLength);
-                byte[] buffer = new byte[packetLength];
+                byte[] buffer = mPacketBuffer;
                 totalBytesReadForPacket = 0;
 
                 while (totalBytesReadForPacket < packetLength && !isAbort) {
@@ -56,7 +68,6 @@ public abstract class PacketParser extends Thread {
                     int bytesReadThisCycle = mInputStream.read(buffer, totalBytesReadForPacket, remainingBytes);
 
                     if (bytesReadThisCycle < 0) {
-                        System.err.println(getName() + ": Stream closed unexpectedly while reading packet data. Expected " + packetLength + " bytes, but stream ended after " + totalBytesReadForPacket + " bytes. Stopping.");
                         isAbort = true;
                         throw new IOException("Stream closed unexpectedly while reading packet data. Expected " + packetLength + " bytes, got " + totalBytesReadForPacket + " before stream end.");
                     }
@@ -65,32 +76,36 @@ public abstract class PacketParser extends Thread {
                 }
 
                 if (isAbort) {
-                    System.out.println(getName() + ": Abort requested during packet body read. Discarding partial packet.");
+                    logger.debug("{}: Abort requested during packet body read. Discarding partial packet.", getName());
                     continue;
                 }
 
-                messageBufferReceived(buffer);
+                WireTracing.trace(WireTracer.Direction.INBOUND, buffer, 0, packetLength);
+                messageBufferReceived(buffer, 0, packetLength);
 
             } catch (IOException e) {
                 if (!isAbort) {
-                    System.err.println(getName() + ": IOException in run loop: " + e.getMessage());
+                    logger.error("{}: IOException in run loop: {}", getName(), e.getMessage());
                 }
+                WireTracing.error(getName() + ": " + e.getMessage());
                 isAbort = true;
             } catch (Exception e) {
                 if (!isAbort) {
-                    System.err.println(getName() + ": Unexpected " + e.getClass().getSimpleName() + " in run loop: " + e.getMessage());
+                    logger.error("{}: Unexpected {} in run loop: {}", getName(), e.getClass().getSimpleName(), e.getMessage());
                 }
+                WireTracing.error(getName() + ": " + e);
                 isAbort = true;
             }
         }
 
-        System.out.println(getName() + ": Packet parsing loop finished.");
+        logger.debug("{}: Packet parsing loop finished.", getName());
     }
 
     public void abort() {
-        System.out.println(getName() + ": Abort requested.");
+        logger.debug("{}: Abort requested.", getName());
         isAbort = true;
     }
 
+    @Override
     public abstract void messageBufferReceived(byte[] buf);
 }
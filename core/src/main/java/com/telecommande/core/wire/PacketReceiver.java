@@ -0,0 +1,23 @@
+package com.telecommande.core.wire;
+
+/**
+ * Receives complete, de-framed packets from a transport.
+ * <p>
+ * Implemented by {@link PacketParser} so the same parser can be fed either by its own
+ * blocking reader thread or by a {@link NioTransport} selector loop.
+ */
+public interface PacketReceiver {
+
+    void messageBufferReceived(byte[] buf);
+
+    /**
+     * Receives a packet that occupies {@code buf[offset, offset + length)}. The array is a reused
+     * transport buffer and must not be retained. The default implementation copies the slice;
+     * parsers override it to decode in place.
+     */
+    default void messageBufferReceived(byte[] buf, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(buf, offset, copy, 0, length);
+        messageBufferReceived(copy);
+    }
+}
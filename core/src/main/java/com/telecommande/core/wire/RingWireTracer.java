@@ -0,0 +1,186 @@
+package com.telecommande.core.wire;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link WireTracer} that keeps the last {@code capacity} frames in memory and dumps them to the
+ * log when a transport reports an error.
+ * <p>
+ * Frequent message types such as pings can be sampled with {@link #setSampleRate(int, int)};
+ * payload bytes are only kept when hex dumps are turned on.
+ */
+public class RingWireTracer implements WireTracer {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Logger logger = LoggerFactory.getLogger(RingWireTracer.class);
+    private final Entry[] mEntries;
+    private final Map<Integer, Integer> mSampleRates = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> mSeenCounts = new ConcurrentHashMap<>();
+    private int mNextIndex;
+    private int mSize;
+    private volatile boolean isEnabled = true;
+    private volatile boolean isHexDump = false;
+    private volatile boolean isLogFrames = false;
+
+    public RingWireTracer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mEntries = new Entry[capacity];
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    public void setHexDump(boolean hexDump) {
+        isHexDump = hexDump;
+    }
+
+    /**
+     * Also writes every recorded frame to the debug log as it happens.
+     */
+    public void setLogFrames(boolean logFrames) {
+        isLogFrames = logFrames;
+    }
+
+    /**
+     * Records only one of every {@code oneInN} frames of {@code messageType}; 1 records all.
+     */
+    public void setSampleRate(int messageType, int oneInN) {
+        if (oneInN <= 1) {
+            mSampleRates.remove(messageType);
+        } else {
+            mSampleRates.put(messageType, oneInN);
+        }
+    }
+
+    @Override
+    public void onFrame(Direction direction, int messageType, byte[] buf, int offset, int length) {
+        Integer rate = mSampleRates.get(messageType);
+        if (rate != null) {
+            AtomicLong seen = mSeenCounts.computeIfAbsent(messageType, k -> new AtomicLong());
+            if (seen.getAndIncrement() % rate != 0) {
+                return;
+            }
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), direction, messageType, length,
+                isHexDump ? toHex(buf, offset, length) : null);
+        synchronized (mEntries) {
+            mEntries[mNextIndex] = entry;
+            mNextIndex = (mNextIndex + 1) % mEntries.length;
+            if (mSize < mEntries.length) {
+                mSize++;
+            }
+        }
+        if (isLogFrames) {
+            logger.debug("{}", entry);
+        }
+    }
+
+    @Override
+    public void onError(String reason) {
+        logger.warn("Wire error: {}. Last frames:", reason);
+        dump();
+    }
+
+    /**
+     * Writes the retained frames, oldest first, to the log.
+     */
+    public void dump() {
+        for (Entry entry : snapshot()) {
+            logger.warn("  {}", entry);
+        }
+    }
+
+    /**
+     * Returns the retained frames, oldest first.
+     */
+    public List<Entry> snapshot() {
+        synchronized (mEntries) {
+            List<Entry> entries = new ArrayList<>(mSize);
+            int start = (mNextIndex - mSize + mEntries.length) % mEntries.length;
+            for (int i = 0; i < mSize; i++) {
+                entries.add(mEntries[(start + i) % mEntries.length]);
+            }
+            return entries;
+        }
+    }
+
+    public void clear() {
+        synchronized (mEntries) {
+            mNextIndex = 0;
+            mSize = 0;
+            Arrays.fill(mEntries, null);
+        }
+    }
+
+    private static String toHex(byte[] buf, int offset, int length) {
+        char[] chars = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int b = buf[offset + i] & 0xff;
+            chars[i * 2] = HEX_DIGITS[b >>> 4];
+            chars[i * 2 + 1] = HEX_DIGITS[b & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    public static final class Entry {
+        private final long mTimeMillis;
+        private final Direction mDirection;
+        private final int mMessageType;
+        private final int mLength;
+        private final String mHex;
+
+        Entry(long timeMillis, Direction direction, int messageType, int length, String hex) {
+            mTimeMillis = timeMillis;
+            mDirection = direction;
+            mMessageType = messageType;
+            mLength = length;
+            mHex = hex;
+        }
+
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        public Direction getDirection() {
+            return mDirection;
+        }
+
+        public int getMessageType() {
+            return mMessageType;
+        }
+
+        public int getLength() {
+            return mLength;
+        }
+
+        /**
+         * Payload as lowercase hex, or {@code null} if hex dumps were off when it was recorded.
+         */
+        public String getHex() {
+            return mHex;
+        }
+
+        @Override
+        public String toString() {
+            return mTimeMillis + " " + mDirection + " type=" + mMessageType + " len=" + mLength
+                    + (mHex != null ? " " + mHex : "");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.telecommande.core.wire;
+
+/**
+ * Observes every frame crossing the wire. Install one with {@link WireTracing#setTracer}.
+ * <p>
+ * Frames are reported without their length prefix, as a slice of a transport buffer that must
+ * not be retained. {@link #onFrame} is only invoked when {@link #isEnabled()} returns true, so a
+ * disabled tracer costs a single volatile read per frame.
+ */
+public interface WireTracer {
+
+    enum Direction {
+        INBOUND,
+        OUTBOUND
+    }
+
+    WireTracer NONE = new WireTracer() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void onFrame(Direction direction, int messageType, byte[] buf, int offset, int length) {
+        }
+
+        @Override
+        public void onError(String reason) {
+        }
+    };
+
+    boolean isEnabled();
+
+    /**
+     * @param messageType field number of the first tag in the frame, which for
+     *                    {@code RemoteMessage} identifies the payload; 0 for an empty frame
+     */
+    void onFrame(Direction direction, int messageType, byte[] buf, int offset, int length);
+
+    /**
+     * Called when a transport aborts on a malformed frame or I/O failure.
+     */
+    void onError(String reason);
+}
@@ -0,0 +1,76 @@
+package com.telecommande.core.wire;
+
+/**
+ * Process-wide hook through which the transports and message managers report frames.
+ */
+public final class WireTracing {
+
+    private static volatile WireTracer sTracer = WireTracer.NONE;
+
+    private WireTracing() {
+    }
+
+    public static WireTracer getTracer() {
+        return sTracer;
+    }
+
+    public static void setTracer(WireTracer tracer) {
+        sTracer = tracer != null ? tracer : WireTracer.NONE;
+    }
+
+    public static boolean isEnabled() {
+        return sTracer.isEnabled();
+    }
+
+    /**
+     * Reports a de-framed payload.
+     */
+    public static void trace(WireTracer.Direction direction, byte[] buf, int offset, int length) {
+        WireTracer tracer = sTracer;
+        if (!tracer.isEnabled()) {
+            return;
+        }
+        tracer.onFrame(direction, messageType(buf, offset, length), buf, offset, length);
+    }
+
+    /**
+     * Reports a complete frame, skipping its varint32 length prefix.
+     */
+    public static void traceFrame(WireTracer.Direction direction, byte[] frame) {
+        WireTracer tracer = sTracer;
+        if (!tracer.isEnabled()) {
+            return;
+        }
+        int offset = 0;
+        while (offset < frame.length && frame[offset++] < 0) {
+            // skip length prefix
+        }
+        int length = frame.length - offset;
+        tracer.onFrame(direction, messageType(frame, offset, length), frame, offset, length);
+    }
+
+    public static void error(String reason) {
+        WireTracer tracer = sTracer;
+        if (tracer.isEnabled()) {
+            tracer.onError(reason);
+        }
+    }
+
+    /**
+     * Returns the field number of the first tag in {@code buf[offset, offset + length)}, or 0 if
+     * the slice is empty or starts with a malformed tag.
+     */
+    public static int messageType(byte[] buf, int offset, int length) {
+        int end = offset + length;
+        int tag = 0;
+        int shift = 0;
+        for (int i = offset; i < end && shift < 35; i++, shift += 7) {
+            byte b = buf[i];
+            tag |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return tag >>> 3;
+            }
+        }
+        return 0;
+    }
+}
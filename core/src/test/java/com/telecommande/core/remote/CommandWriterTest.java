@@ -0,0 +1,108 @@
+package com.telecommande.core.remote;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommandWriterTest {
+
+    private final CountDownLatch mUnblock = new CountDownLatch(1);
+    private final CountDownLatch mWriting = new CountDownLatch(1);
+    private CommandWriter mWriter;
+
+    /**
+     * Stands in for a TV that stopped reading: the first write never returns until the test ends.
+     */
+    private final OutputStream mStalledStream = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mWriting.countDown();
+            try {
+                mUnblock.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    };
+
+    @After
+    public void tearDown() {
+        mUnblock.countDown();
+        if (mWriter != null) {
+            mWriter.close();
+        }
+    }
+
+    /**
+     * Fills the queue behind a write that never completes.
+     */
+    private void stall(byte[] frame, boolean isIdempotent, int capacity) throws InterruptedException {
+        mWriter.submit(new byte[]{0});
+        assertTrue(mWriting.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < capacity; i++) {
+            mWriter.submit(frame, isIdempotent);
+        }
+    }
+
+    private static boolean isRejected(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get(0, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof RejectedExecutionException;
+        } catch (TimeoutException e) {
+            return false;
+        }
+        return false;
+    }
+
+    @Test(timeout = 10_000)
+    public void coalescesIdenticalIdempotentFrame() throws Exception {
+        mWriter = new CommandWriter(mStalledStream, 2, CommandWriter.OverflowPolicy.COALESCE, "CommandWriterTest");
+        byte[] imeEdit = {1, 2, 3};
+        stall(imeEdit, true, 2);
+
+        CompletableFuture<Void> merged = mWriter.submit(imeEdit.clone(), true);
+        CompletableFuture<Void> again = mWriter.submit(imeEdit, true);
+
+        assertSame(merged, again);
+        assertFalse(isRejected(merged));
+        assertEquals(2, mWriter.getCoalescedCount());
+        assertEquals(0, mWriter.getDroppedCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void neverCoalescesKeyPresses() throws Exception {
+        mWriter = new CommandWriter(mStalledStream, 2, CommandWriter.OverflowPolicy.COALESCE, "CommandWriterTest");
+        byte[] keyPress = {4, 5, 6};
+        stall(keyPress, false, 2);
+
+        // A deliberate second press must fail visibly, not return the queued press's future.
+        CompletableFuture<Void> second = mWriter.submit(keyPress);
+        assertTrue(isRejected(second));
+        // Nor does an idempotent frame merge into a queued key press.
+        CompletableFuture<Void> idempotent = mWriter.submit(keyPress, true);
+        assertTrue(isRejected(idempotent));
+        assertNotSame(second, idempotent);
+        assertEquals(0, mWriter.getCoalescedCount());
+        assertEquals(2, mWriter.getDroppedCount());
+    }
+}
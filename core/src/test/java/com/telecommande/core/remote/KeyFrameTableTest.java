@@ -0,0 +1,107 @@
+package com.telecommande.core.remote;
+
+import com.telecommande.core.wire.FrameDecoder;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class KeyFrameTableTest {
+
+    private static byte[] build(Remotemessage.RemoteKeyCode keyCode, Remotemessage.RemoteDirection direction) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Remotemessage.RemoteMessage.newBuilder()
+                .setRemoteKeyInject(Remotemessage.RemoteKeyInject.newBuilder()
+                        .setKeyCode(keyCode)
+                        .setDirection(direction))
+                .build()
+                .writeDelimitedTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void everyFrameMatchesBuilderOutput() throws IOException {
+        RemoteMessageManager messageManager = new RemoteMessageManager();
+        int checked = 0;
+        for (Remotemessage.RemoteKeyCode keyCode : Remotemessage.RemoteKeyCode.values()) {
+            if (keyCode == Remotemessage.RemoteKeyCode.UNRECOGNIZED) {
+                continue;
+            }
+            for (Remotemessage.RemoteDirection direction : Remotemessage.RemoteDirection.values()) {
+                if (direction == Remotemessage.RemoteDirection.UNRECOGNIZED) {
+                    continue;
+                }
+                byte[] expected = build(keyCode, direction);
+                assertArrayEquals(keyCode + "/" + direction, expected, KeyFrameTable.get(keyCode, direction));
+                assertArrayEquals(keyCode + "/" + direction, expected, messageManager.createKeyCommand(keyCode, direction));
+                checked++;
+            }
+        }
+        assertEquals((Remotemessage.RemoteKeyCode.values().length - 1) * (Remotemessage.RemoteDirection.values().length - 1), checked);
+    }
+
+    @Test
+    public void framesAreCachedAndShared() {
+        byte[] first = KeyFrameTable.get(Remotemessage.RemoteKeyCode.KEYCODE_DPAD_UP, Remotemessage.RemoteDirection.SHORT);
+        byte[] second = KeyFrameTable.get(Remotemessage.RemoteKeyCode.KEYCODE_DPAD_UP, Remotemessage.RemoteDirection.SHORT);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void framesDecodeBackToTheKeyPress() throws IOException {
+        byte[] frame = KeyFrameTable.get(Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_UP, Remotemessage.RemoteDirection.START_LONG);
+        List<Remotemessage.RemoteMessage> decoded = new ArrayList<>();
+        new FrameDecoder().feed(frame, 0, frame.length, (buffer, offset, length) ->
+                decoded.add(Remotemessage.RemoteMessage.parseFrom(Arrays.copyOfRange(buffer, offset, offset + length))));
+
+        assertEquals(1, decoded.size());
+        assertEquals(Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_UP, decoded.get(0).getRemoteKeyInject().getKeyCode());
+        assertEquals(Remotemessage.RemoteDirection.START_LONG, decoded.get(0).getRemoteKeyInject().getDirection());
+    }
+
+    @Test
+    public void burstRepeatsTheShortPressFrame() throws IOException {
+        byte[] frame = build(Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_DOWN, Remotemessage.RemoteDirection.SHORT);
+        byte[] burst = new RemoteMessageManager().createKeyBurst(Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_DOWN, 5);
+
+        assertEquals(frame.length * 5, burst.length);
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(frame, Arrays.copyOfRange(burst, i * frame.length, (i + 1) * frame.length));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnrecognizedKeyCode() {
+        new RemoteMessageManager().createKeyCommand(Remotemessage.RemoteKeyCode.UNRECOGNIZED, Remotemessage.RemoteDirection.SHORT);
+    }
+
+    @Test
+    public void concurrentFirstUseYieldsIdenticalFrames() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Remotemessage.RemoteKeyCode keyCode = Remotemessage.RemoteKeyCode.KEYCODE_MEDIA_PLAY_PAUSE;
+            Callable<byte[]> task = () -> KeyFrameTable.get(keyCode, Remotemessage.RemoteDirection.END_LONG);
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(task));
+            }
+            byte[] expected = build(keyCode, Remotemessage.RemoteDirection.END_LONG);
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
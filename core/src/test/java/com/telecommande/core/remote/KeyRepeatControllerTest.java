@@ -0,0 +1,217 @@
+package com.telecommande.core.remote;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyRepeatControllerTest {
+
+    private static final Remotemessage.RemoteKeyCode KEY = Remotemessage.RemoteKeyCode.KEYCODE_VOLUME_UP;
+
+    private FakeScheduler mScheduler;
+    private List<String> mFrames;
+    private KeyRepeatController mController;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler();
+        mFrames = new ArrayList<>();
+        mController = new KeyRepeatController((keyCode, direction) -> {
+            mFrames.add(mScheduler.mNowNanos / 1_000_000 + "ms " + direction);
+            return CompletableFuture.completedFuture(null);
+        }, mScheduler, () -> mScheduler.mNowNanos);
+        mController.setLongPressDelayMillis(400);
+        mController.setRepeatIntervalMillis(150);
+    }
+
+    @Test
+    public void tapIsOneShortFrame() {
+        mController.press(KEY);
+        mScheduler.advanceMillis(399);
+        mController.release(KEY);
+        mScheduler.advanceMillis(1000);
+
+        assertEquals(Collections.singletonList("399ms SHORT"), mFrames);
+    }
+
+    @Test
+    public void holdStartsLongPressAfterDelay() {
+        mController.press(KEY);
+        mScheduler.advanceMillis(1000);
+        mController.release(KEY);
+
+        assertEquals(List.of("400ms START_LONG", "1000ms END_LONG"), mFrames);
+        assertEquals(2, mController.getFramesSent());
+    }
+
+    @Test
+    public void longPressWaitsForTheClockWhenWokenEarly() {
+        mController.press(KEY);
+        // The scheduler fires every task right away; the clock has not moved.
+        mScheduler.runAllNow();
+        assertEquals(Collections.emptyList(), mFrames);
+
+        mScheduler.advanceMillis(400);
+        assertEquals(Collections.singletonList("400ms START_LONG"), mFrames);
+    }
+
+    @Test
+    public void burstRepeatsAtTheInterval() {
+        mController.setMode(KeyRepeatController.Mode.SHORT_BURST);
+        mController.press(KEY);
+        mScheduler.advanceMillis(500);
+        mController.release(KEY);
+        mScheduler.advanceMillis(1000);
+
+        assertEquals(List.of("0ms SHORT", "150ms SHORT", "300ms SHORT", "450ms SHORT"), mFrames);
+    }
+
+    @Test
+    public void burstDoesNotCatchUpAfterStall() {
+        mController.setMode(KeyRepeatController.Mode.SHORT_BURST);
+        mController.press(KEY);
+        // Nothing ran for 1s, e.g. the scheduler thread was starved.
+        mScheduler.mNowNanos += TimeUnit.SECONDS.toNanos(1);
+        mScheduler.advanceMillis(200);
+
+        assertEquals(List.of("0ms SHORT", "1000ms SHORT", "1150ms SHORT"), mFrames);
+    }
+
+    @Test
+    public void releaseAllEndsEveryHeldKey() {
+        mController.press(KEY);
+        mController.press(Remotemessage.RemoteKeyCode.KEYCODE_DPAD_UP);
+        mScheduler.advanceMillis(500);
+        mController.releaseAll();
+        mScheduler.advanceMillis(1000);
+
+        assertEquals(List.of("400ms START_LONG", "400ms START_LONG", "500ms END_LONG", "500ms END_LONG"), mFrames);
+    }
+
+    /**
+     * Runs scheduled tasks on the test thread as {@link #advanceMillis(long)} moves the fake clock.
+     */
+    private static final class FakeScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+        private final List<Task<?>> mTasks = new ArrayList<>();
+        private long mNowNanos;
+
+        void advanceMillis(long millis) {
+            long endNanos = mNowNanos + TimeUnit.MILLISECONDS.toNanos(millis);
+            while (true) {
+                Task<?> next = null;
+                for (Task<?> task : mTasks) {
+                    if (next == null || task.mDueNanos < next.mDueNanos) {
+                        next = task;
+                    }
+                }
+                if (next == null || next.mDueNanos > endNanos) {
+                    break;
+                }
+                mTasks.remove(next);
+                mNowNanos = Math.max(mNowNanos, next.mDueNanos);
+                next.run();
+            }
+            mNowNanos = endNanos;
+        }
+
+        void runAllNow() {
+            List<Task<?>> tasks = new ArrayList<>(mTasks);
+            mTasks.clear();
+            for (Task<?> task : tasks) {
+                task.run();
+            }
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return schedule(() -> {
+                command.run();
+                return null;
+            }, delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            Task<V> task = new Task<>(callable, mNowNanos + unit.toNanos(delay));
+            mTasks.add(task);
+            return task;
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+
+        private final class Task<V> extends FutureTask<V> implements ScheduledFuture<V> {
+            private final long mDueNanos;
+
+            Task(Callable<V> callable, long dueNanos) {
+                super(callable);
+                mDueNanos = dueNanos;
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                mTasks.remove(this);
+                return super.cancel(mayInterruptIfRunning);
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(mDueNanos - mNowNanos, TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.telecommande.core.remote;
+
+import com.telecommande.core.ssl.DummyTrustManager;
+import com.telecommande.core.ssl.SSLServerSocketFactoryWrapper;
+import com.telecommande.core.ssl.SslUtil;
+import com.telecommande.core.wire.NioConnection;
+import com.telecommande.core.wire.NioTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the queue against a TV stand-in that completes the TLS handshake and then never reads, so
+ * the socket buffers fill and frames stay in flight.
+ */
+public class NioCommandQueueTest {
+
+    private static final int CAPACITY = 4;
+    private static final int MAX_FRAMES = 2000;
+
+    private NioTransport mTransport;
+    private SSLServerSocket mServerSocket;
+    private NioConnection mConnection;
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        mServerSocket = (SSLServerSocket) SSLServerSocketFactoryWrapper.CreateWithDummyTrustManager(
+                SslUtil.generateTestServerKeyManager("SunX509", "test")).createServerSocket(0);
+        Thread server = new Thread(() -> {
+            try (SSLSocket socket = (SSLSocket) mServerSocket.accept()) {
+                socket.startHandshake();
+                mDone.await();
+            } catch (IOException | InterruptedException ignored) {
+            }
+        }, "StalledTv");
+        server.setDaemon(true);
+        server.start();
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new DummyTrustManager()}, null);
+        mTransport = new NioTransport("NioCommandQueueTest");
+        mConnection = mTransport.open("localhost", mServerSocket.getLocalPort(), sslContext);
+        mConnection.start(buf -> {
+        });
+        mConnection.awaitHandshake(10_000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mDone.countDown();
+        if (mConnection != null) {
+            mConnection.close();
+        }
+        if (mTransport != null) {
+            mTransport.close();
+        }
+        mServerSocket.close();
+    }
+
+    private static boolean isRejected(CompletableFuture<Void> future) throws InterruptedException {
+        if (!future.isCompletedExceptionally()) {
+            return false;
+        }
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof RejectedExecutionException;
+        }
+        return false;
+    }
+
+    @Test(timeout = 30_000)
+    public void stalledTvFillsTheQueueAndDrops() throws Exception {
+        NioCommandQueue queue = new NioCommandQueue(mConnection, CAPACITY, CommandWriter.OverflowPolicy.DROP);
+        byte[] frame = new byte[64 * 1024];
+        for (int i = 0; i < MAX_FRAMES; i++) {
+            if (isRejected(queue.submit(frame, false))) {
+                return;
+            }
+        }
+        fail("no back-pressure after " + MAX_FRAMES + " frames");
+    }
+
+    @Test(timeout = 30_000)
+    public void coalescesOnlyIdempotentFrames() throws Exception {
+        NioCommandQueue queue = new NioCommandQueue(mConnection, CAPACITY, CommandWriter.OverflowPolicy.COALESCE);
+        byte[] imeEdit = new byte[64 * 1024];
+        Set<CompletableFuture<Void>> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+        CompletableFuture<Void> merged = null;
+        for (int i = 0; i < MAX_FRAMES && merged == null; i++) {
+            CompletableFuture<Void> future = queue.submit(imeEdit, true);
+            assertFalse("idempotent frame rejected", isRejected(future));
+            if (!queued.add(future)) {
+                merged = future;
+            }
+        }
+        assertNotNull("no back-pressure after " + MAX_FRAMES + " frames", merged);
+
+        // The queue is full of identical IME edits; the same bytes sent as a key press are not merged.
+        CompletableFuture<Void> keyPress = queue.submit(imeEdit.clone(), false);
+        assertFalse(queued.contains(keyPress));
+        assertTrue("key press merged into a queued frame", isRejected(keyPress));
+    }
+
+    @Test(timeout = 30_000)
+    public void closeReleasesBlockedSender() throws Exception {
+        NioCommandQueue queue = new NioCommandQueue(mConnection, CAPACITY, CommandWriter.OverflowPolicy.BLOCK);
+        byte[] frame = new byte[64 * 1024];
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < MAX_FRAMES; i++) {
+                queue.submit(frame, false);
+            }
+        });
+        // Give the sender time to fill the queue and block on it.
+        Thread.sleep(500);
+        assertFalse("sender never blocked", blocked.isDone());
+
+        queue.close();
+        blocked.get(5, TimeUnit.SECONDS);
+        assertTrue(queue.submit(frame, false).isCompletedExceptionally());
+    }
+}
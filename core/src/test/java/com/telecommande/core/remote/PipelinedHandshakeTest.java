@@ -0,0 +1,151 @@
+package com.telecommande.core.remote;
+
+import com.telecommande.core.AndroidRemoteContext;
+import com.telecommande.core.ssl.SSLServerSocketFactoryWrapper;
+import com.telecommande.core.ssl.SslContextCache;
+import com.telecommande.core.ssl.SslUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PipelinedHandshakeTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mKeyStoreFile;
+    private SSLServerSocket mServerSocket;
+    private final AtomicInteger mIgnoredSetActives = new AtomicInteger();
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        mKeyStoreFile = new File(mFolder.getRoot(), "pipelined.keystore");
+        AndroidRemoteContext.getInstance().setKeyStoreFile(mKeyStoreFile);
+        AndroidRemoteContext.getInstance().setPipelinedHandshake(true);
+        ConnectMetrics.getInstance().reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mDone.countDown();
+        if (mServerSocket != null) {
+            mServerSocket.close();
+        }
+        SslContextCache.getInstance().invalidate(mKeyStoreFile);
+    }
+
+    private static void write(OutputStream out, Remotemessage.RemoteMessage message) throws IOException {
+        message.writeDelimitedTo(out);
+        out.flush();
+    }
+
+    /**
+     * Starts a TV stand-in that only accepts the strict sequence: a set-active that arrives before
+     * its own is ignored, and the connection then stays silent instead of answering with an error.
+     */
+    private int startSilentTv() throws Exception {
+        mServerSocket = (SSLServerSocket) SSLServerSocketFactoryWrapper.CreateWithDummyTrustManager(
+                SslUtil.generateTestServerKeyManager("SunX509", "test")).createServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    SSLSocket socket = (SSLSocket) mServerSocket.accept();
+                    Thread connection = new Thread(() -> serve(socket));
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException ignored) {
+                // server socket closed
+            }
+        }, "SilentTv");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return mServerSocket.getLocalPort();
+    }
+
+    private void serve(SSLSocket socket) {
+        try (SSLSocket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            write(out, Remotemessage.RemoteMessage.newBuilder()
+                    .setRemoteConfigure(Remotemessage.RemoteConfigure.newBuilder().setCode1(1)).build());
+            if (!Remotemessage.RemoteMessage.parseDelimitedFrom(in).hasRemoteConfigure()) {
+                return;
+            }
+            // The pipelined configure and set-active go out in one write, hence one TLS record.
+            if (in.available() > 0) {
+                // Early set-active: never acknowledged.
+                mIgnoredSetActives.incrementAndGet();
+                mDone.await();
+                return;
+            }
+            write(out, Remotemessage.RemoteMessage.newBuilder()
+                    .setRemoteSetActive(Remotemessage.RemoteSetActive.newBuilder().setActive(1)).build());
+            Remotemessage.RemoteMessage.parseDelimitedFrom(in);
+            write(out, Remotemessage.RemoteMessage.newBuilder()
+                    .setRemoteStart(Remotemessage.RemoteStart.newBuilder().setStarted(true)).build());
+            while (Remotemessage.RemoteMessage.parseDelimitedFrom(in) != null) {
+                // until the client closes
+            }
+        } catch (IOException | InterruptedException ignored) {
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void silentTvFallsBackToStrictSequence() throws Exception {
+        int port = startSilentTv();
+        String[] error = new String[1];
+        RemoteSession.RemoteSessionListener listener = new RemoteSession.RemoteSessionListener() {
+            @Override
+            public void onConnected() {
+            }
+
+            @Override
+            public void onSslError() {
+                error[0] = "SSL error";
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+            }
+        };
+
+        RemoteSession first = new RemoteSession("localhost", port, listener);
+        first.connect();
+        assertNull(error[0]);
+        assertTrue(first.isConnected());
+        assertEquals(1, mIgnoredSetActives.get());
+        assertEquals(1, ConnectMetrics.getInstance().getHandshakeFallbackCount());
+        first.closeSocket();
+
+        // The host is now known to be strict, so the next session does not try pipelining again.
+        RemoteSession second = new RemoteSession("localhost", port, listener);
+        second.connect();
+        assertNull(error[0]);
+        assertTrue(second.isConnected());
+        assertEquals(1, mIgnoredSetActives.get());
+        assertEquals(1, ConnectMetrics.getInstance().getHandshakeFallbackCount());
+        second.closeSocket();
+    }
+}
@@ -0,0 +1,111 @@
+package com.telecommande.core.ssl;
+
+import com.telecommande.core.AndroidRemoteContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SslContextCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final SslContextCache mCache = SslContextCache.getInstance();
+    private File mKeyStoreFile;
+
+    @Before
+    public void setUp() {
+        mKeyStoreFile = new File(mFolder.getRoot(), "prepare.keystore");
+        AndroidRemoteContext.getInstance().setKeyStoreFile(mKeyStoreFile);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.invalidate(mKeyStoreFile);
+    }
+
+    @Test(timeout = 60_000)
+    public void prepareBuildsTheContextGetReturns() throws Exception {
+        assertFalse(mKeyStoreFile.exists());
+        long misses = mCache.getMissCount();
+
+        SSLContext prepared = mCache.prepare().get(30, TimeUnit.SECONDS);
+
+        assertTrue("identity not generated", mKeyStoreFile.exists());
+        assertEquals(misses + 1, mCache.getMissCount());
+        assertTrue(mCache.getLastBuildNanos() > 0);
+
+        long hits = mCache.getHitCount();
+        assertSame(prepared, mCache.get());
+        assertSame(prepared, mCache.get(mKeyStoreFile));
+        assertEquals(misses + 1, mCache.getMissCount());
+        assertEquals(hits + 2, mCache.getHitCount());
+    }
+
+    @Test(timeout = 60_000)
+    public void connectRacingPrepareWaitsInsteadOfBuildingAgain() throws Exception {
+        long misses = mCache.getMissCount();
+
+        CompletableFuture<SSLContext> prepare = mCache.prepare();
+        // Races the background build, which is still generating the identity.
+        SSLContext connecting = mCache.get(mKeyStoreFile);
+
+        assertSame(connecting, prepare.get(30, TimeUnit.SECONDS));
+        assertEquals("second identity built", misses + 1, mCache.getMissCount());
+    }
+
+    @Test(timeout = 60_000)
+    public void prepareWhenCachedIsAHit() throws Exception {
+        SSLContext cached = mCache.get(mKeyStoreFile);
+        long misses = mCache.getMissCount();
+        long hits = mCache.getHitCount();
+
+        assertSame(cached, mCache.prepare().get(30, TimeUnit.SECONDS));
+        assertEquals(misses, mCache.getMissCount());
+        assertEquals(hits + 1, mCache.getHitCount());
+    }
+
+    @Test(timeout = 60_000)
+    public void prepareAfterInvalidateBuildsAgain() throws Exception {
+        SSLContext first = mCache.prepare().get(30, TimeUnit.SECONDS);
+        long invalidations = mCache.getInvalidationCount();
+
+        mCache.invalidate(mKeyStoreFile);
+        assertEquals(invalidations + 1, mCache.getInvalidationCount());
+        SSLContext second = mCache.prepare().get(30, TimeUnit.SECONDS);
+
+        assertNotSame(first, second);
+        assertSame(second, mCache.get());
+    }
+
+    @Test(timeout = 60_000)
+    public void preparedIdentityDoesNotLookPaired() throws Exception {
+        assertFalse(KeyStoreManager.isPaired(mKeyStoreFile));
+
+        mCache.prepare().get(30, TimeUnit.SECONDS);
+        assertTrue(mKeyStoreFile.exists());
+        assertFalse("pre-generated identity counts as paired", KeyStoreManager.isPaired(mKeyStoreFile));
+
+        KeyStoreManager.markPaired(mKeyStoreFile);
+        assertTrue(KeyStoreManager.isPaired(mKeyStoreFile));
+
+        // Resetting the pairing deletes the keystore; the next identity starts unpaired again.
+        assertTrue(mKeyStoreFile.delete());
+        assertFalse(KeyStoreManager.isPaired(mKeyStoreFile));
+        mCache.prepare().get(30, TimeUnit.SECONDS);
+        assertFalse(KeyStoreManager.isPaired(mKeyStoreFile));
+    }
+}
@@ -0,0 +1,138 @@
+package com.telecommande.core.ssl;
+
+import com.telecommande.core.AndroidRemoteContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TlsResumptionTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mKeyStoreFile;
+    private SSLServerSocket mServerSocket;
+
+    @Before
+    public void setUp() throws Exception {
+        mKeyStoreFile = new File(mFolder.getRoot(), "resumption.keystore");
+        AndroidRemoteContext.getInstance().setKeyStoreFile(mKeyStoreFile);
+        TlsSessionMetrics.getInstance().reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mServerSocket != null) {
+            mServerSocket.close();
+        }
+        SslContextCache.getInstance().invalidate(mKeyStoreFile);
+    }
+
+    /**
+     * Starts a TV stand-in that sends one byte per connection, so the client has processed any
+     * TLS 1.3 session ticket by the time its first read returns.
+     */
+    private int startServer(String protocol) throws Exception {
+        mServerSocket = (SSLServerSocket) SSLServerSocketFactoryWrapper.CreateWithDummyTrustManager(
+                SslUtil.generateTestServerKeyManager("SunX509", "test")).createServerSocket(0);
+        mServerSocket.setEnabledProtocols(new String[]{protocol});
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = mServerSocket.accept();
+                    Thread connection = new Thread(() -> {
+                        try (Socket s = socket) {
+                            s.getOutputStream().write(1);
+                            s.getOutputStream().flush();
+                            InputStream in = s.getInputStream();
+                            while (in.read() >= 0) {
+                                // until the client closes
+                            }
+                        } catch (IOException ignored) {
+                        }
+                    });
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException ignored) {
+                // server socket closed
+            }
+        }, "TlsResumptionServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return mServerSocket.getLocalPort();
+    }
+
+    private boolean connect(SSLContext sslContext, int port) throws Exception {
+        // The resumption check compares wall-clock millis; keep connects apart.
+        Thread.sleep(5);
+        long connectStartMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket("localhost", port)) {
+            socket.startHandshake();
+            assertEquals(1, socket.getInputStream().read());
+            SSLSession session = socket.getSession();
+            return TlsSessionMetrics.getInstance().record(session, connectStartMillis, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void assertResumesWithCachedContext(String protocol) throws Exception {
+        int port = startServer(protocol);
+        SSLContext sslContext = SslContextCache.getInstance().get(mKeyStoreFile);
+
+        assertFalse("first handshake resumed", connect(sslContext, port));
+        assertSame(sslContext, SslContextCache.getInstance().get(mKeyStoreFile));
+        assertTrue("second handshake not resumed", connect(sslContext, port));
+        assertTrue("third handshake not resumed", connect(sslContext, port));
+
+        assertEquals(1, TlsSessionMetrics.getInstance().getFullCount());
+        assertEquals(2, TlsSessionMetrics.getInstance().getResumedCount());
+    }
+
+    @Test
+    public void resumesTls12Session() throws Exception {
+        assertResumesWithCachedContext("TLSv1.2");
+    }
+
+    @Test
+    public void resumesTls13Session() throws Exception {
+        assertResumesWithCachedContext("TLSv1.3");
+    }
+
+    @Test
+    public void invalidatedContextStartsOver() throws Exception {
+        int port = startServer("TLSv1.3");
+        SSLContext first = SslContextCache.getInstance().get(mKeyStoreFile);
+        assertFalse(connect(first, port));
+
+        SslContextCache.getInstance().invalidate(mKeyStoreFile);
+        SSLContext second = SslContextCache.getInstance().get(mKeyStoreFile);
+        assertNotSame(first, second);
+        assertFalse("new context resumed the old session cache", connect(second, port));
+
+        assertEquals(2, TlsSessionMetrics.getInstance().getFullCount());
+        assertEquals(0, TlsSessionMetrics.getInstance().getResumedCount());
+    }
+
+    @Test
+    public void nullSessionIsNotResumed() {
+        assertFalse(TlsSessionMetrics.isResumed(null, System.currentTimeMillis()));
+    }
+}
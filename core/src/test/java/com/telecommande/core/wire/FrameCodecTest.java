@@ -0,0 +1,192 @@
+package com.telecommande.core.wire;
+
+import com.telecommande.core.remote.Remotemessage;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrameCodecTest {
+
+    private static Remotemessage.RemoteMessage appLink(String link) {
+        return Remotemessage.RemoteMessage.newBuilder()
+                .setRemoteAppLinkLaunchRequest(Remotemessage.RemoteAppLinkLaunchRequest.newBuilder().setAppLink(link))
+                .build();
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void encodeMatchesWriteDelimitedTo() throws IOException {
+        for (int length : new int[]{0, 1, 100, 127, 128, 16383, 16384}) {
+            Remotemessage.RemoteMessage message = appLink(randomText(new Random(length), length));
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            message.writeDelimitedTo(expected);
+
+            assertArrayEquals(expected.toByteArray(), FrameEncoder.encode(message));
+            assertEquals(expected.size(), FrameEncoder.frameSize(message));
+
+            FrameEncoder encoder = new FrameEncoder(16);
+            int size = encoder.encodeToBuffer(message);
+            assertArrayEquals(expected.toByteArray(), Arrays.copyOf(encoder.getBuffer(), size));
+
+            ByteBuffer target = ByteBuffer.allocate(size);
+            FrameEncoder.encode(message, target);
+            assertArrayEquals(expected.toByteArray(), target.array());
+        }
+    }
+
+    @Test
+    public void roundTripThroughParseDelimitedFrom() throws IOException {
+        Remotemessage.RemoteMessage message = appLink("https://www.youtube.com/watch?v=dQw4w9WgXcQ");
+        ByteArrayInputStream in = new ByteArrayInputStream(FrameEncoder.encode(message));
+        assertEquals(message, Remotemessage.RemoteMessage.parseDelimitedFrom(in));
+    }
+
+    @Test
+    public void decodesFramesSplitAtRandomBoundaries() throws IOException {
+        Random random = new Random(1);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            List<byte[]> expected = new ArrayList<>();
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            for (int i = 0; i < 50; i++) {
+                int length = random.nextInt(random.nextBoolean() ? 100 : 8000);
+                Remotemessage.RemoteMessage message = appLink(randomText(random, length));
+                expected.add(message.toByteArray());
+                stream.write(FrameEncoder.encode(message));
+            }
+            byte[] bytes = stream.toByteArray();
+
+            FrameDecoder decoder = new FrameDecoder();
+            List<byte[]> decoded = new ArrayList<>();
+            FrameDecoder.FrameListener listener = (buffer, offset, length) ->
+                    decoded.add(Arrays.copyOfRange(buffer, offset, offset + length));
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = Math.min(bytes.length - offset, 1 + random.nextInt(3000));
+                if (random.nextBoolean()) {
+                    decoder.feed(ByteBuffer.wrap(bytes, offset, count), listener);
+                } else {
+                    decoder.feed(bytes, offset, count, listener);
+                }
+                offset += count;
+            }
+
+            assertEquals(expected.size(), decoded.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), decoded.get(i));
+            }
+            assertEquals(0, decoder.pendingBytes());
+        }
+    }
+
+    @Test
+    public void keepsIncompleteFramePending() throws IOException {
+        byte[] frame = FrameEncoder.encode(appLink("pending"));
+        FrameDecoder decoder = new FrameDecoder();
+        List<Integer> lengths = new ArrayList<>();
+        decoder.feed(frame, 0, frame.length - 1, (buffer, offset, length) -> lengths.add(length));
+
+        assertEquals(0, lengths.size());
+        assertEquals(frame.length - 1, decoder.pendingBytes());
+
+        decoder.feed(frame, frame.length - 1, 1, (buffer, offset, length) -> lengths.add(length));
+        assertEquals(1, lengths.size());
+        // one byte of length prefix
+        assertEquals(frame.length - 1, (int) lengths.get(0));
+        assertEquals(0, decoder.pendingBytes());
+    }
+
+    /**
+     * Reads that keep ending mid-frame, as from a TLS record boundary, must not make the decoder
+     * move the pending bytes each time: the moves stay a small fraction of the input.
+     */
+    @Test
+    public void compactsRarelyWhenReadsStraddleFrames() throws IOException {
+        Random random = new Random(4);
+        List<byte[]> expected = new ArrayList<>();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        while (stream.size() < 1 << 20) {
+            int length = random.nextInt(random.nextInt(10) == 0 ? 4000 : 200);
+            Remotemessage.RemoteMessage message = appLink(randomText(random, length));
+            expected.add(message.toByteArray());
+            stream.write(FrameEncoder.encode(message));
+        }
+        byte[] bytes = stream.toByteArray();
+
+        for (int readSize : new int[]{97, 1460, 4096, 16384}) {
+            FrameDecoder decoder = new FrameDecoder();
+            List<byte[]> decoded = new ArrayList<>();
+            int midFrameReads = 0;
+            for (int offset = 0; offset < bytes.length; offset += readSize) {
+                decoder.feed(bytes, offset, Math.min(readSize, bytes.length - offset),
+                        (buffer, start, length) -> decoded.add(Arrays.copyOfRange(buffer, start, start + length)));
+                if (decoder.pendingBytes() > 0) {
+                    midFrameReads++;
+                }
+            }
+
+            assertEquals(expected.size(), decoded.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), decoded.get(i));
+            }
+            assertTrue("reads of " + readSize + " never straddled a frame", midFrameReads > 0);
+            assertTrue("reads of " + readSize + " moved " + decoder.compactedBytes() + " bytes",
+                    decoder.compactedBytes() < bytes.length / 4);
+        }
+    }
+
+    @Test
+    public void rejectsOversizedFrame() {
+        byte[] frame = FrameEncoder.encode(appLink(randomText(new Random(2), 200)));
+        try {
+            new FrameDecoder(100).feed(frame, 0, frame.length, (buffer, offset, length) -> fail("delivered"));
+            fail("oversized frame accepted");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectsMalformedVarint() {
+        byte[] garbage = {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x01};
+        try {
+            new FrameDecoder().feed(garbage, 0, garbage.length, (buffer, offset, length) -> fail("delivered"));
+            fail("malformed varint accepted");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void randomGarbageNeverHangs() {
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            byte[] garbage = new byte[random.nextInt(200)];
+            random.nextBytes(garbage);
+            try {
+                new FrameDecoder().feed(garbage, 0, garbage.length, (buffer, offset, length) -> {
+                });
+            } catch (IOException ignored) {
+                // malformed input may be rejected, it just must not hang
+            }
+        }
+    }
+}
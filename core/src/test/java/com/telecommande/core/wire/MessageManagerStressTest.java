@@ -0,0 +1,161 @@
+package com.telecommande.core.wire;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+import com.telecommande.core.pairing.PairingMessageManager;
+import com.telecommande.core.pairing.Pairingmessage;
+import com.telecommande.core.remote.RemoteMessageManager;
+import com.telecommande.core.remote.Remotemessage;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * One shared {@link RemoteMessageManager} and {@link PairingMessageManager} hammered from many
+ * threads must produce exactly the frames the protobuf builders do.
+ */
+public class MessageManagerStressTest {
+
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 2000;
+
+    private final RemoteMessageManager mRemoteManager = new RemoteMessageManager();
+    private final PairingMessageManager mPairingManager = new PairingMessageManager();
+
+    private static byte[] delimited(MessageLite message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            message.writeDelimitedTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static Remotemessage.RemoteMessage imeBatchEdit(int imeCounter, int fieldCounter, String value) {
+        int cursor = value.length() - 1;
+        return Remotemessage.RemoteMessage.newBuilder()
+                .setRemoteImeBatchEdit(Remotemessage.RemoteImeBatchEdit.newBuilder()
+                        .setImeCounter(imeCounter)
+                        .setFieldCounter(fieldCounter)
+                        .addEditInfo(Remotemessage.RemoteEditInfo.newBuilder()
+                                .setInsert(1)
+                                .setTextFieldStatus(Remotemessage.RemoteImeObject.newBuilder()
+                                        .setStart(cursor)
+                                        .setEnd(cursor)
+                                        .setValue(value))))
+                .build();
+    }
+
+    private static Remotemessage.RemoteMessage configure(int code, String model) {
+        return Remotemessage.RemoteMessage.newBuilder()
+                .setRemoteConfigure(Remotemessage.RemoteConfigure.newBuilder()
+                        .setCode1(code)
+                        .setDeviceInfo(Remotemessage.RemoteDeviceInfo.newBuilder()
+                                .setModel(model)
+                                .setVendor("vendor")
+                                .setUnknown1(1)
+                                .setUnknown2("1")
+                                .setPackageName("androidtv-remote")
+                                .setAppVersion("1.0.0")))
+                .build();
+    }
+
+    private static Pairingmessage.PairingMessage pairingRequest(String clientName) {
+        return Pairingmessage.PairingMessage.newBuilder()
+                .setPairingRequest(Pairingmessage.PairingRequest.newBuilder()
+                        .setClientName(clientName)
+                        .setServiceName("atvremote"))
+                .setStatus(Pairingmessage.PairingMessage.Status.STATUS_OK)
+                .setProtocolVersion(2)
+                .build();
+    }
+
+    private static Pairingmessage.PairingMessage secret(byte[] secret) {
+        return Pairingmessage.PairingMessage.newBuilder()
+                .setPairingSecret(Pairingmessage.PairingSecret.newBuilder().setSecret(ByteString.copyFrom(secret)))
+                .setStatus(Pairingmessage.PairingMessage.Status.STATUS_OK)
+                .setProtocolVersion(2)
+                .build();
+    }
+
+    private void checkOnce(int thread, int iteration) {
+        int value = thread * ITERATIONS + iteration;
+        String text = "text-" + value;
+        assertArrayEquals(delimited(imeBatchEdit(thread, iteration, text)),
+                mRemoteManager.createImeBatchEdit(thread, iteration, text));
+        assertArrayEquals(delimited(configure(value, "model-" + value)),
+                mRemoteManager.createRemoteConfigure(value, "model-" + value, "vendor", 1, "1"));
+
+        int val1 = value % 3 == 0 ? -value : value;
+        Remotemessage.RemoteMessage ping = Remotemessage.RemoteMessage.newBuilder()
+                .setRemotePingResponse(Remotemessage.RemotePingResponse.newBuilder().setVal1(val1))
+                .build();
+        assertArrayEquals(delimited(ping), mRemoteManager.createPingResponse(val1));
+        byte[] dest = new byte[32];
+        int length = mRemoteManager.writePingResponse(val1, dest);
+        assertArrayEquals(delimited(ping), Arrays.copyOf(dest, length));
+
+        Remotemessage.RemoteKeyCode[] keyCodes = Remotemessage.RemoteKeyCode.values();
+        Remotemessage.RemoteKeyCode keyCode = keyCodes[iteration % (keyCodes.length - 1)];
+        Remotemessage.RemoteMessage key = Remotemessage.RemoteMessage.newBuilder()
+                .setRemoteKeyInject(Remotemessage.RemoteKeyInject.newBuilder()
+                        .setKeyCode(keyCode)
+                        .setDirection(Remotemessage.RemoteDirection.SHORT))
+                .build();
+        assertArrayEquals(delimited(key), mRemoteManager.createKeyCommand(keyCode, Remotemessage.RemoteDirection.SHORT));
+
+        assertArrayEquals(delimited(pairingRequest("client-" + value)),
+                mPairingManager.createPairingMessage("client-" + value, "atvremote"));
+        byte[] secretBytes = {(byte) thread, (byte) iteration, (byte) (iteration >> 8)};
+        assertArrayEquals(delimited(secret(secretBytes)),
+                mPairingManager.createSecretMessage(mPairingManager.createSecretMessageProto(secretBytes)));
+    }
+
+    @Test(timeout = 60_000)
+    public void sharedManagersMatchBuilderOutputUnderContention() throws Exception {
+        // The fixed frames first, so a mismatch there is not blamed on contention.
+        byte[] pairingOption = mPairingManager.createPairingOption();
+        byte[] config = mPairingManager.createConfigMessage();
+        byte[] active = mRemoteManager.createRemoteActive(622);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(executor.submit((Callable<Integer>) () -> {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        checkOnce(thread, i);
+                        assertArrayEquals(pairingOption, mPairingManager.createPairingOption());
+                        assertArrayEquals(config, mPairingManager.createConfigMessage());
+                        assertArrayEquals(active, mRemoteManager.createRemoteActive(622));
+                    }
+                    return ITERATIONS;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> result : results) {
+                // rethrows the first assertion that failed on that thread
+                total += result.get();
+            }
+            assertEquals(THREADS * ITERATIONS, total);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}